@@ -0,0 +1,563 @@
+package KSudoku;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.regex.Pattern;
+
+/**
+ * Benchmark harness for the KSudoku hot paths.
+ * Every benchmark is warmed up and then measured in several timed
+ * iterations on the calling thread. Only the selected benchmarks build
+ * their fixtures, so a single one runs without the heap of the others.
+ * Reports time per operation and
+ * bytes allocated per operation, the latter read from the thread's
+ * allocation counter. Results are printed and written as JSON, so they
+ * can be compared across releases.
+ *
+ * Usage: Benchmarks [output.json [name regex]]
+ */
+public class Benchmarks {
+    private static final long WARMUP_MILLIS = 1000;     /* warmup time per benchmark */
+    private static final int ITERATIONS = 5;            /* measured iterations per benchmark */
+    private static final long ITERATION_MILLIS = 1000;  /* time of one measured iteration */
+
+    private static final String HARD_PUZZLE =          /* "AI Escargot" */
+            "1....7.9..3..2...8..96..5....53..9...1..8...26....4...3......1..4......7..7...3..";
+
+    private static volatile int sink;                   /* keeps results alive so the JIT can't drop the work */
+
+    /**
+     * A single benchmarked operation.
+     */
+    interface Operation {
+        /**
+         * Runs the operation once.
+         * @return any value depending on the work done.
+         */
+        int run() throws Exception;
+    }
+
+    /**
+     * Measurement of one benchmark.
+     */
+    static class Result {
+        String name;            /* benchmark name */
+        long operations;        /* measured operations count */
+        double nsPerOp;         /* mean time per operation */
+        double nsPerOpError;    /* standard deviation across iterations */
+        double bytesPerOp;      /* mean allocation per operation */
+    }
+
+    /**
+     * Fixture shared by several benchmarks, built when the first of them is selected.
+     */
+    static class Shared<T> {
+        private Callable<T> factory;    /* builds the fixture, null once built */
+        private T value;                /* the fixture */
+
+        Shared(Callable<T> factory) {
+            this.factory = factory;
+        }
+
+        T get() throws Exception {
+            if (factory != null) {
+                value = factory.call();
+                factory = null;
+            }
+            return value;
+        }
+    }
+
+    /**
+     * Runs the benchmarks.
+     * @param args optional output file (bench_results.json by default)
+     *             and optional regular expression selecting benchmark names.
+     */
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+
+        Path output = Paths.get(args.length > 0 ? args[0] : "bench_results.json");
+        Pattern filter = Pattern.compile(args.length > 1 ? args[1] : ".*");
+
+        Map<String, Callable<Operation>> benchmarks = new LinkedHashMap<>();
+        register(benchmarks);
+
+        /* Fixtures are built only for the selected benchmarks. */
+        List<Result> results = new ArrayList<>();
+        for (Map.Entry<String, Callable<Operation>> benchmark : benchmarks.entrySet())
+            if (filter.matcher(benchmark.getKey()).find()) {
+                Result result = measure(benchmark.getKey(), benchmark.getValue().call());
+                System.out.printf("%-40s %12.1f ns/op  +- %8.1f  %10.1f B/op%n",
+                        result.name, result.nsPerOp, result.nsPerOpError, result.bytesPerOp);
+                results.add(result);
+            }
+
+        writeJson(output, results);
+    }
+
+    /**
+     * Declares all benchmarks, each with the setup building its fixture.
+     */
+    private static void register(Map<String, Callable<Operation>> benchmarks) {
+        /* Sample puzzles shared by solver benchmarks, then hint and canonicalization samples. */
+        Shared<Puzzle[][]> samplePuzzles = new Shared<>(() -> {
+            Generator sampleGenerator = new Generator(new Random(42));
+            Puzzle[][] sets = new Puzzle[3][64];
+            for (Puzzle[] set : sets)
+                for (int i = 0; i < set.length; ++i)
+                    set[i] = sampleGenerator.generate();
+            return sets;
+        });
+        Shared<int[][]> samples = new Shared<>(() -> {
+            Puzzle[] puzzles = samplePuzzles.get()[0];
+            int[][] grids = new int[puzzles.length][];
+            for (int i = 0; i < puzzles.length; ++i)
+                grids[i] = puzzles[i].toGrid();
+            return grids;
+        });
+        final int sampleCount = 64;
+
+        /* Model selection and copy path. */
+        benchmarks.put("model.newSolution", () -> {
+            Model model = new Model();
+            return () -> model.getNewSolution()[0][0] + (model.getVisibilityArray()[0][0] ? 1 : 0);
+        });
+        benchmarks.put("model.newSolution.corpus", () -> {
+            Path corpusPath = Files.createTempFile("ksudoku-bench", ".corpus");
+            corpusPath.toFile().deleteOnExit();
+            PuzzleCorpus.build(corpusPath, 1024);
+            Model corpusModel = new Model(corpusPath);
+            return () -> corpusModel.getNewSolution()[0][0] + (corpusModel.getVisibilityArray()[0][0] ? 1 : 0);
+        });
+
+        /* Solver and generator. */
+        benchmarks.put("solver.solve", () -> {
+            int[][] grids = samples.get();
+            Solver solver = new Solver();
+            int[] grid = new int[Geometry.CLASSIC.cells];
+            int[] next = new int[1];
+            return () -> {
+                System.arraycopy(grids[next[0]++ & (grids.length - 1)], 0, grid, 0, Geometry.CLASSIC.cells);
+                solver.solve(grid);
+                return grid[0];
+            };
+        });
+        benchmarks.put("solver.countSolutions2", () -> {
+            int[][] grids = samples.get();
+            Solver solver = new Solver();
+            int[] next = new int[1];
+            return () -> solver.countSolutions(grids[next[0]++ & (grids.length - 1)], 2);
+        });
+
+        /* Solver result cache, against solver.solve: hits on the samples, misses on an uncached grid. */
+        Shared<SolutionCache> cache = new Shared<>(() -> {
+            Solver solver = new Solver();
+            SolutionCache filled = new SolutionCache(1024);
+            for (int[] sample : samples.get()) {
+                int[] solved = sample.clone();
+                solver.solve(solved);
+                filled.putSolution(sample, solved);
+            }
+            return filled;
+        });
+        benchmarks.put("cache.getSolution", () -> {
+            int[][] grids = samples.get();
+            SolutionCache filled = cache.get();
+            int[] grid = new int[Geometry.CLASSIC.cells];
+            int[] next = new int[1];
+            return () -> {
+                System.arraycopy(grids[next[0]++ & (grids.length - 1)], 0, grid, 0, Geometry.CLASSIC.cells);
+                return filled.getSolution(grid) + grid[0];
+            };
+        });
+        benchmarks.put("cache.getSolution.miss", () -> {
+            SolutionCache filled = cache.get();
+            int[] uncached = new int[Geometry.CLASSIC.cells];
+            int[] next = new int[1];
+            return () -> {
+                uncached[0] = Math.floorMod(next[0]++, 10);
+                return filled.getSolution(uncached);
+            };
+        });
+
+        /* Parallel counting, on generated puzzles and on a hard one with a deep search tree. */
+        Shared<SolutionCounter> counter = new Shared<>(() ->
+                new SolutionCounter(Geometry.CLASSIC, ForkJoinPool.commonPool(), 2));
+        benchmarks.put("counter.countSolutions2", () -> {
+            int[][] grids = samples.get();
+            SolutionCounter parallel = counter.get();
+            int[] next = new int[1];
+            return () -> parallel.count(grids[next[0]++ & (grids.length - 1)], 2);
+        });
+        int[] hard = BatchSolver.parse(HARD_PUZZLE);
+        benchmarks.put("solver.countSolutions2.hard", () -> {
+            Solver solver = new Solver();
+            return () -> solver.countSolutions(hard, 2);
+        });
+        benchmarks.put("counter.countSolutions2.hard", () -> {
+            SolutionCounter parallel = counter.get();
+            return () -> parallel.count(hard, 2);
+        });
+
+        /* Batch solving of all samples on one core: one by one, and propagated in lanes,
+         * with SIMD when the vector classes are compiled and the module is added. */
+        Shared<String[]> sampleLines = new Shared<>(() -> {
+            int[][] grids = samples.get();
+            String[] formatted = new String[grids.length];
+            for (int i = 0; i < grids.length; ++i)
+                formatted[i] = BatchSolver.format(grids[i]);
+            return formatted;
+        });
+        benchmarks.put("batchSolver.scalar" + sampleCount, () -> {
+            String[] formatted = sampleLines.get();
+            return () -> {
+                int length = 0;
+                for (String line : formatted)
+                    length += BatchSolver.solveLine(line).length();
+                return length;
+            };
+        });
+        LanePropagator propagator = LanePropagator.create(Geometry.CLASSIC);
+        benchmarks.put("batchSolver.lanes" + sampleCount + "." + propagator.getClass().getSimpleName(), () -> {
+            String[] formatted = sampleLines.get();
+            String[] lines = new String[formatted.length];
+            return () -> {
+                System.arraycopy(formatted, 0, lines, 0, lines.length);
+                BatchSolver.solveLines(lines, 0, lines.length, propagator);
+                return lines[0].length();
+            };
+        });
+        for (LanePropagator lanes : new LanePropagator[]{new ScalarPropagator(Geometry.CLASSIC), propagator})
+            if (lanes == propagator || !(propagator instanceof ScalarPropagator))
+                registerPropagator(benchmarks, lanes, samples, sampleCount);
+
+        /* Validation of completed grids, half of them broken by a swap of two cells. */
+        benchmarks.put("validator.validateLine", () -> {
+            int[][] grids = samples.get();
+            Solver solver = new Solver();
+            String[] completed = new String[grids.length];
+            for (int i = 0; i < grids.length; ++i) {
+                int[] solved = grids[i].clone();
+                solver.solve(solved);
+                if ((i & 1) != 0) {
+                    int swap = solved[0];
+                    solved[0] = solved[1];
+                    solved[1] = swap;
+                }
+                completed[i] = BatchSolver.format(solved);
+            }
+            int[] next = new int[1];
+            return () -> GridValidator.validateLine(completed[next[0]++ & (completed.length - 1)]).length();
+        });
+
+        benchmarks.put("generator.generate", () -> {
+            Generator generator = new Generator(new Random(42));
+            return () -> generator.generate().givensCount();
+        });
+
+        benchmarks.put("rater.hint", () -> {
+            Puzzle[] hintPuzzles = samplePuzzles.get()[1];
+            Rater rater = new Rater();
+            BoardState start = new BoardState();
+            int[] next = new int[1];
+            return () -> {
+                Puzzle puzzle = hintPuzzles[next[0]++ & (hintPuzzles.length - 1)];
+                start.reset(puzzle);
+                return rater.hint(start, puzzle).getCell();
+            };
+        });
+
+        /* Large boards, fewer samples as they take longer to generate. */
+        for (int boxSize = 4; boxSize <= Geometry.MAX_BOX_SIZE; ++boxSize)
+            registerBoard(benchmarks, Geometry.of(boxSize));
+
+        /* Variant rules, against the same benchmarks on the classic rules. */
+        Geometry classic = Geometry.CLASSIC;
+        registerBoard(benchmarks, classic);
+        registerBoard(benchmarks, classic.withDiagonals());
+        registerBoard(benchmarks, classic.withWindows());
+        registerBoard(benchmarks, classic.withRegions(classic.parseRegions(Geometry.JIGSAW_LAYOUT_9)));
+
+        /* Symmetry canonicalization. */
+        benchmarks.put("canonicalizer.fingerprint", () -> {
+            Puzzle[] puzzles = samplePuzzles.get()[2];
+            Canonicalizer canonicalizer = new Canonicalizer();
+            int[] next = new int[1];
+            return () -> (int) canonicalizer.fingerprint(puzzles[next[0]++ & (puzzles.length - 1)]);
+        });
+        benchmarks.put("symmetry.apply", () -> {
+            Puzzle[] puzzles = samplePuzzles.get()[2];
+            Symmetry symmetry = new Symmetry(Geometry.CLASSIC);
+            Random rand = new Random(42);
+            int[] next = new int[1];
+            return () -> symmetry.apply(puzzles[next[0]++ & (puzzles.length - 1)], rand).get(0);
+        });
+
+        /* Autosave of one move, appended to the journal of a temporary directory. */
+        Shared<GameJournal> journal = new Shared<>(() -> {
+            Path saveDirectory = Files.createTempDirectory("ksudoku-bench");
+            saveDirectory.toFile().deleteOnExit();
+            GameJournal started = new GameJournal(saveDirectory, Geometry.CLASSIC);
+            started.start(samplePuzzles.get()[2][0]);
+            for (String file : new String[]{"game9.snapshot", "game9.journal"})
+                saveDirectory.resolve(file).toFile().deleteOnExit();
+            return started;
+        });
+        benchmarks.put("journal.record", () -> {
+            GameJournal started = journal.get();
+            int journalCell = emptyCell(samplePuzzles.get()[2][0]);
+            return () -> {
+                int digit = started.getGrid()[journalCell] % 9 + 1;
+                started.record(journalCell, started.getGrid()[journalCell], digit);
+                return digit;
+            };
+        });
+        benchmarks.put("journal.undoRedo", () -> {
+            GameJournal started = journal.get();
+            return () -> {
+                started.undo();
+                return started.redo();
+            };
+        });
+
+        /* One move in one of 100k sessions of the off-heap store. */
+        benchmarks.put("sessionStore.set", () -> {
+            Puzzle[] puzzles = samplePuzzles.get()[2];
+            SessionStore store = new SessionStore(Geometry.CLASSIC, 100_000, 0);
+            long[] sessions = new long[100_000];
+            for (int i = 0; i < sessions.length; ++i)
+                sessions[i] = store.open(puzzles[i & (puzzles.length - 1)]);
+            int[] next = new int[1];
+            return () -> {
+                int i = next[0]++;
+                long session = sessions[(int) ((i & 0xFFFFFFFFL) % sessions.length)];
+                int cell = Math.floorMod(i, Geometry.CLASSIC.cells);
+                return store.set(session, cell, Math.floorMod(i, 10)) && store.isConflict(session, cell) ? 1 : 0;
+            };
+        });
+
+        /* Per-keystroke collision highlighting, against a View without a frame. */
+        benchmarks.put("controller.keystroke", () -> {
+            View view = new View(Geometry.CLASSIC, false);
+            new Controller(view, new Model());
+            int[] field = emptyField(view);
+            boolean[] filled = new boolean[1];
+            return () -> {
+                filled[0] = !filled[0];
+                view.setFieldText(field[0], field[1], filled[0] ? "5" : "");
+                return view.getFieldBackground(field[0], field[1]).getRGB();
+            };
+        });
+    }
+
+    /**
+     * Declares the solve, generate and validation benchmarks of a large board
+     * or of a variant.
+     */
+    private static void registerBoard(Map<String, Callable<Operation>> benchmarks, Geometry geometry) {
+        String suffix = "." + geometry.getName().replace(' ', '.');
+        Shared<Puzzle[]> puzzles = new Shared<>(() -> {
+            Generator generator = new Generator(geometry, new Random(42));
+            Puzzle[] generated = new Puzzle[8];
+            for (int i = 0; i < generated.length; ++i)
+                generated[i] = generator.generate();
+            return generated;
+        });
+
+        benchmarks.put("solver.solve" + suffix, () -> {
+            Puzzle[] samples = puzzles.get();
+            Solver solver = new Solver(geometry);
+            int[] grid = new int[geometry.cells];
+            int[] next = new int[1];
+            return () -> {
+                Puzzle puzzle = samples[next[0]++ & (samples.length - 1)];
+                for (int cell = 0; cell < geometry.cells; ++cell)
+                    grid[cell] = puzzle.isGiven(cell) ? puzzle.get(cell) : 0;
+                solver.solve(grid);
+                return grid[0];
+            };
+        });
+        benchmarks.put("generator.generate" + suffix, () -> {
+            Generator generator = new Generator(geometry, new Random(42));
+            return () -> generator.generate().givensCount();
+        });
+
+        /* Validation of a completed grid over the unit tables. */
+        benchmarks.put("validator.validate" + suffix, () -> {
+            Puzzle puzzle = puzzles.get()[0];
+            StringBuilder completed = new StringBuilder();
+            for (int cell = 0; cell < geometry.cells; ++cell)
+                completed.append(geometry.symbol(puzzle.get(cell)));
+            String line = completed.toString();
+            return () -> GridValidator.validate(geometry, line).length();
+        });
+
+        /* One edit of the board state: collision counters and peer conflicts. */
+        benchmarks.put("boardState.set" + suffix, () -> {
+            Puzzle puzzle = puzzles.get()[0];
+            BoardState board = new BoardState(geometry);
+            board.reset(puzzle);
+            int cell = emptyCell(puzzle);
+            int[] digit = new int[1];
+            return () -> {
+                digit[0] = digit[0] % geometry.size + 1;
+                board.set(cell, digit[0]);
+                return board.isConflict(cell) ? 1 : 0;
+            };
+        });
+
+        /* Hint on the starting board, the longest way to the first placement. */
+        benchmarks.put("rater.hint" + suffix, () -> {
+            Puzzle[] samples = puzzles.get();
+            Rater rater = new Rater(geometry);
+            BoardState start = new BoardState(geometry);
+            int[] next = new int[1];
+            return () -> {
+                Puzzle puzzle = samples[next[0]++ & (samples.length - 1)];
+                start.reset(puzzle);
+                return rater.hint(start, puzzle).getCell();
+            };
+        });
+    }
+
+    /**
+     * Declares the benchmark propagating all samples, without the search
+     * the propagation leaves to the solver.
+     */
+    private static void registerPropagator(Map<String, Callable<Operation>> benchmarks, LanePropagator propagator,
+                                           Shared<int[][]> samples, int sampleCount) {
+        int lanes = propagator.lanes(), cells = Geometry.CLASSIC.cells, all = (int) Geometry.CLASSIC.all;
+        benchmarks.put("propagator.propagate" + sampleCount + "." + propagator.getClass().getSimpleName(), () -> {
+            int[][] grids = samples.get();
+            int[] candidates = new int[cells * lanes];
+            return () -> {
+                for (int first = 0; first < grids.length; first += lanes) {
+                    for (int lane = 0; lane < lanes; ++lane)
+                        for (int cell = 0; cell < cells; ++cell) {
+                            int digit = first + lane < grids.length ? grids[first + lane][cell] : 0;
+                            candidates[cell * lanes + lane] = digit == 0 ? all : 1 << (digit - 1);
+                        }
+                    propagator.propagate(candidates);
+                }
+                return candidates[0];
+            };
+        });
+    }
+
+    /**
+     * Finds a cell that is not a given.
+     */
+    private static int emptyCell(Puzzle puzzle) {
+        for (int cell = 0; cell < puzzle.getGeometry().cells; ++cell)
+            if (!puzzle.isGiven(cell))
+                return cell;
+        throw new IllegalStateException("No empty cell");
+    }
+
+    /**
+     * Finds a field the player can type into.
+     */
+    private static int[] emptyField(View view) {
+        for (int i = 0; i < 9; ++i)
+            for (int j = 0; j < 9; ++j)
+                if (view.getDefaultFieldBackground(i, j) == Color.WHITE)
+                    return new int[]{i, j};
+        throw new IllegalStateException("No empty field");
+    }
+
+    /**
+     * Warms a benchmark up and measures it.
+     */
+    static Result measure(String name, Operation operation) throws Exception {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        runFor(operation, WARMUP_MILLIS * 1_000_000L);
+
+        double[] nsPerOp = new double[ITERATIONS];
+        long totalOps = 0, totalBytes = 0;
+
+        for (int i = 0; i < ITERATIONS; ++i) {
+            long bytesBefore = threads.getThreadAllocatedBytes(threadId);
+            long start = System.nanoTime();
+            long ops = runFor(operation, ITERATION_MILLIS * 1_000_000L);
+            long elapsed = System.nanoTime() - start;
+            totalBytes += threads.getThreadAllocatedBytes(threadId) - bytesBefore;
+
+            nsPerOp[i] = (double) elapsed / ops;
+            totalOps += ops;
+        }
+
+        double mean = 0, variance = 0;
+        for (double v : nsPerOp)
+            mean += v / ITERATIONS;
+        for (double v : nsPerOp)
+            variance += (v - mean) * (v - mean) / ITERATIONS;
+
+        Result result = new Result();
+        result.name = name;
+        result.operations = totalOps;
+        result.nsPerOp = mean;
+        result.nsPerOpError = Math.sqrt(variance);
+        result.bytesPerOp = (double) totalBytes / totalOps;
+        return result;
+    }
+
+    /**
+     * Runs an operation in growing batches until the time is up.
+     * @return number of operations run.
+     */
+    private static long runFor(Operation operation, long nanos) throws Exception {
+        long deadline = System.nanoTime() + nanos;
+        long ops = 0;
+        int batch = 1, acc = 0;
+
+        do {
+            for (int i = 0; i < batch; ++i)
+                acc += operation.run();
+            ops += batch;
+            if (batch < 1024)
+                batch <<= 1;
+        } while (System.nanoTime() < deadline);
+
+        sink = acc;
+        return ops;
+    }
+
+    /**
+     * Writes results as a JSON document.
+     */
+    private static void writeJson(Path output, List<Result> results) throws IOException {
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(output, StandardCharsets.UTF_8))) {
+            out.println("{");
+            out.printf("  \"timestamp\": %d,%n", System.currentTimeMillis());
+            out.printf("  \"jvm\": \"%s %s\",%n", System.getProperty("java.vm.name"), System.getProperty("java.version"));
+            out.printf("  \"cores\": %d,%n", Runtime.getRuntime().availableProcessors());
+            out.println("  \"benchmarks\": [");
+            for (int i = 0; i < results.size(); ++i) {
+                Result r = results.get(i);
+                out.printf(java.util.Locale.ROOT,
+                        "    {\"name\": \"%s\", \"operations\": %d, \"nsPerOp\": %.2f, \"nsPerOpError\": %.2f, \"bytesPerOp\": %.2f}%s%n",
+                        r.name, r.operations, r.nsPerOp, r.nsPerOpError, r.bytesPerOp,
+                        i + 1 < results.size() ? "," : "");
+            }
+            out.println("  ]");
+            out.println("}");
+        }
+        System.out.println("Results written to " + output);
+    }
+}
@@ -0,0 +1,172 @@
+package KSudoku;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Startup time and footprint of a headless KSudoku run.
+ * Runs KSudoku.main with "--validate" on a small file of grids in fresh
+ * JVMs, once per class path given, e.g. the core classes alone against a
+ * build with the Swing UI or an older release. Reports the mean wall time
+ * of a run, the classes loaded, those of AWT and Swing among them, and the
+ * memory committed by the JVM and by the class metadata at exit, read from
+ * native memory tracking.
+ * Results are printed and written as JSON, like the Benchmarks ones.
+ *
+ * Usage: Startup output.json name=classpath [name=classpath ...]
+ */
+public class Startup {
+    private static final int RUNS = 10;         /* timed runs per class path, after one warmup run */
+    private static final Pattern COMMITTED =       /* total and metaspace lines of the report, in bytes or KB */
+            Pattern.compile("(Total|Class)[: ]*\\(?reserved=\\d+(?:KB)?, committed=(\\d+)(KB)?");
+
+    /**
+     * Measurement of one class path.
+     */
+    static class Result {
+        String name;            /* class path name */
+        double millis;          /* mean wall time of a run */
+        double millisError;     /* standard deviation across runs */
+        int classes;            /* classes loaded by a run */
+        int desktopClasses;     /* java.awt and javax.swing classes among them */
+        long committedKB;       /* memory committed by the JVM at exit */
+        long classKB;           /* memory committed for class metadata at exit */
+    }
+
+    /**
+     * Runs the measurements.
+     * @param args output file, then name=classpath pairs.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: Startup <output.json> <name>=<classpath> [<name>=<classpath> ...]");
+            System.exit(2);
+        }
+
+        /* Completed grids to validate, one of them broken. */
+        Path input = Files.createTempFile("ksudoku-startup", ".txt");
+        Path output = Files.createTempFile("ksudoku-startup", ".out");
+        Path classLog = Files.createTempFile("ksudoku-startup", ".log");
+        for (Path path : new Path[]{input, output, classLog})
+            path.toFile().deleteOnExit();
+        Generator generator = new Generator(new Random(42));
+        Solver solver = new Solver();
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 64; ++i) {
+            int[] grid = generator.generate().toGrid();
+            solver.solve(grid);
+            grid[0] = i == 0 ? grid[1] : grid[0];
+            lines.add(BatchSolver.format(grid));
+        }
+        Files.write(input, lines, StandardCharsets.UTF_8);
+
+        List<Result> results = new ArrayList<>();
+        for (int i = 1; i < args.length; ++i) {
+            int split = args[i].indexOf('=');
+            Result result = measure(args[i].substring(0, split), args[i].substring(split + 1), input, output, classLog);
+            System.out.printf("%-20s %8.1f ms  +- %6.1f  %6d classes  %4d desktop  %8d KB committed  %6d KB class%n",
+                    result.name, result.millis, result.millisError, result.classes, result.desktopClasses,
+                    result.committedKB, result.classKB);
+            results.add(result);
+        }
+
+        writeJson(Paths.get(args[0]), results);
+    }
+
+    /**
+     * Times the runs on one class path, then counts the classes and the
+     * memory of one more run with logging and tracking on.
+     */
+    static Result measure(String name, String classPath, Path input, Path output, Path classLog)
+            throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.add("-cp");
+        command.add(classPath);
+        int options = command.size();
+        command.add("KSudoku.KSudoku");
+        command.add("--validate");
+        command.add(input.toString());
+        command.add(output.toString());
+
+        double[] millis = new double[RUNS];
+        run(command);
+        for (int i = 0; i < RUNS; ++i) {
+            long start = System.nanoTime();
+            run(command);
+            millis[i] = (System.nanoTime() - start) / 1e6;
+        }
+
+        command.addAll(options, List.of("-Xlog:class+load:file=" + classLog, "-XX:NativeMemoryTracking=summary",
+                "-XX:+UnlockDiagnosticVMOptions", "-XX:+PrintNMTStatistics"));
+        String report = run(command);
+
+        Result result = new Result();
+        result.name = name;
+        for (double v : millis)
+            result.millis += v / RUNS;
+        for (double v : millis)
+            result.millisError += (v - result.millis) * (v - result.millis) / RUNS;
+        result.millisError = Math.sqrt(result.millisError);
+        for (String line : Files.readAllLines(classLog, StandardCharsets.UTF_8))
+            if (line.contains("[class,load]")) {
+                ++result.classes;
+                if (line.contains(" java.awt.") || line.contains(" javax.swing.") || line.contains(" sun.awt."))
+                    ++result.desktopClasses;
+            }
+        result.committedKB = result.classKB = -1;
+        Matcher committed = COMMITTED.matcher(report);
+        while (committed.find()) {
+            long kb = Long.parseLong(committed.group(2)) / (committed.group(3) != null ? 1 : 1024);
+            if (committed.group(1).equals("Total"))
+                result.committedKB = kb;
+            else
+                result.classKB = kb;
+        }
+        return result;
+    }
+
+    /**
+     * Runs a command to its end.
+     * @return its standard output.
+     */
+    private static String run(List<String> command) throws IOException, InterruptedException {
+        Process process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        String text = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        if (process.waitFor() != 0)
+            throw new IOException(String.join(" ", command) + " failed");
+        return text;
+    }
+
+    /**
+     * Writes results as a JSON document.
+     */
+    private static void writeJson(Path output, List<Result> results) throws IOException {
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(output, StandardCharsets.UTF_8))) {
+            out.println("{");
+            out.printf("  \"timestamp\": %d,%n", System.currentTimeMillis());
+            out.printf("  \"jvm\": \"%s %s\",%n", System.getProperty("java.vm.name"), System.getProperty("java.version"));
+            out.println("  \"startup\": [");
+            for (int i = 0; i < results.size(); ++i) {
+                Result r = results.get(i);
+                out.printf(java.util.Locale.ROOT,
+                        "    {\"name\": \"%s\", \"millis\": %.2f, \"millisError\": %.2f, \"classes\": %d, \"desktopClasses\": %d, \"committedKB\": %d, \"classKB\": %d}%s%n",
+                        r.name, r.millis, r.millisError, r.classes, r.desktopClasses, r.committedKB, r.classKB,
+                        i + 1 < results.size() ? "," : "");
+            }
+            out.println("  ]");
+            out.println("}");
+        }
+        System.out.println("Results written to " + output);
+    }
+}
@@ -0,0 +1,208 @@
+package KSudoku;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Headless batch solving of puzzle files.
+ * Each input line holds one puzzle in row-major order, '.' or '0' for an
+ * empty cell. The board size follows from the line length: 81 characters
+ * for a classic puzzle, 256 for 16x16 and 625 for 25x25, where digits
+ * above 9 are letters. Each output line holds the digits of the solution,
+ * "unsolvable" when there is none, or "invalid" when the line is not a
+ * puzzle. Blank input lines stay blank.
+ * In lanes mode, classic puzzles are first propagated several at a time
+ * by a LanePropagator, with SIMD instructions when the Vector API is
+ * available, and only the puzzles singles do not solve are searched.
+ * The output is the same.
+ */
+public class BatchSolver {
+    private static final int CHUNK_SIZE = 1 << 14;     /* lines read and solved at a time */
+
+    private static final ThreadLocal<Solver[]> SOLVERS =      /* one solver per box size */
+            ThreadLocal.withInitial(() -> new Solver[Geometry.MAX_BOX_SIZE + 1]);
+    private static final ThreadLocal<LanePropagator> PROPAGATORS =    /* classic board propagators */
+            ThreadLocal.withInitial(() -> LanePropagator.create(Geometry.CLASSIC));
+
+    /**
+     * Solves a single puzzle line.
+     * @param line N * N digit symbols, '.' or '0' for empty cells.
+     * @return the solution line, or an error word.
+     */
+    static String solveLine(String line) {
+        String puzzle = line.trim();
+        if (puzzle.isEmpty())
+            return "";
+
+        int[] grid = parse(puzzle);
+        if (grid == null)
+            return "invalid";
+        if (!solver(Geometry.ofCells(grid.length)).solve(grid))
+            return "unsolvable";
+
+        return format(grid);
+    }
+
+    /**
+     * Solves a range of puzzle lines, propagating classic puzzles lanes()
+     * at a time and searching only those the propagation leaves open.
+     * Other lines are solved one by one as by solveLine().
+     * @param lines puzzle lines, replaced by the solution lines or error words.
+     * @param from first line of the range.
+     * @param to end of the range, exclusive.
+     * @param propagator propagator for classic puzzles.
+     */
+    static void solveLines(String[] lines, int from, int to, LanePropagator propagator) {
+        Geometry geometry = Geometry.CLASSIC;
+        int lanes = propagator.lanes(), all = (int) geometry.all;
+        int[] candidates = new int[geometry.cells * lanes];
+        int[] batch = new int[lanes];   /* line of each lane */
+        int used = 0;
+
+        for (int i = from; i <= to; ++i) {
+            /* Propagate a full batch, or the last partial one. */
+            if (used == lanes || (i == to && used > 0)) {
+                for (int lane = used; lane < lanes; ++lane)
+                    for (int cell = 0; cell < geometry.cells; ++cell)
+                        candidates[cell * lanes + lane] = all;
+                propagator.propagate(candidates);
+                for (int lane = 0; lane < used; ++lane)
+                    lines[batch[lane]] = finish(candidates, lanes, lane);
+                used = 0;
+            }
+            if (i == to)
+                break;
+
+            String line = lines[i].trim();
+            int[] grid = line.length() == geometry.cells ? parse(line) : null;
+            if (grid == null) {
+                lines[i] = solveLine(line);
+                continue;
+            }
+
+            for (int cell = 0; cell < geometry.cells; ++cell)
+                candidates[cell * lanes + used] = grid[cell] == 0 ? all : 1 << (grid[cell] - 1);
+            batch[used++] = i;
+        }
+    }
+
+    /**
+     * Reads the result of one lane after propagation, searching when
+     * some cells still have several candidates.
+     * @return the solution line or "unsolvable".
+     */
+    private static String finish(int[] candidates, int lanes, int lane) {
+        Geometry geometry = Geometry.CLASSIC;
+        int[] grid = new int[geometry.cells];
+        boolean open = false;
+        for (int cell = 0; cell < geometry.cells; ++cell) {
+            int mask = candidates[cell * lanes + lane];
+            if (mask == 0)
+                return "unsolvable";
+            if ((mask & (mask - 1)) == 0)
+                grid[cell] = Integer.numberOfTrailingZeros(mask) + 1;
+            else
+                open = true;
+        }
+
+        if (open && !solver(geometry).solve(grid))
+            return "unsolvable";
+        return format(grid);
+    }
+
+    /**
+     * Returns the calling thread's solver for a board shape.
+     */
+    private static Solver solver(Geometry geometry) {
+        Solver[] solvers = SOLVERS.get();
+        if (solvers[geometry.boxSize] == null)
+            solvers[geometry.boxSize] = new Solver(geometry);
+        return solvers[geometry.boxSize];
+    }
+
+    /**
+     * Parses a puzzle line into solver grid.
+     * @param line N * N digit symbols, '.' or '0' for empty cells.
+     * @return N * N cell values, or null if the line is malformed.
+     */
+    static int[] parse(CharSequence line) {
+        Geometry geometry = Geometry.ofCells(line.length());
+        if (geometry == null)
+            return null;
+
+        int[] grid = new int[geometry.cells];
+        for (int cell = 0; cell < geometry.cells; ++cell) {
+            int digit = geometry.digitOf(line.charAt(cell));
+            if (digit < 0)
+                return null;
+            grid[cell] = digit;
+        }
+        return grid;
+    }
+
+    /**
+     * Formats a solver grid as a line of digit symbols, '.' for empty cells.
+     * @param grid N * N cell values.
+     * @return the line.
+     */
+    static String format(int[] grid) {
+        Geometry geometry = Geometry.ofCells(grid.length);
+        char[] line = new char[grid.length];
+        for (int cell = 0; cell < grid.length; ++cell)
+            line[cell] = grid[cell] == 0 ? '.' : geometry.symbol(grid[cell]);
+        return new String(line);
+    }
+
+    /**
+     * Solves all puzzles of the input file on all cores.
+     * @param input input file path, "-" for standard input.
+     * @param output output file path, "-" for standard output.
+     * @return number of processed lines.
+     * @throws IOException when reading or writing fails.
+     */
+    public static long run(String input, String output) throws IOException {
+        LineProcessor processor = new LineProcessor(ForkJoinPool.commonPool(), CHUNK_SIZE, BatchSolver::solveLine);
+
+        try (BufferedReader in = openInput(input); Writer out = openOutput(output)) {
+            return processor.process(in, out);
+        }
+    }
+
+    /**
+     * Solves all puzzles of the input file on all cores in lanes mode.
+     * @param input input file path, "-" for standard input.
+     * @param output output file path, "-" for standard output.
+     * @return number of processed lines.
+     * @throws IOException when reading or writing fails.
+     */
+    public static long runLanes(String input, String output) throws IOException {
+        LineProcessor processor = new LineProcessor(ForkJoinPool.commonPool(), CHUNK_SIZE,
+                (lines, from, to) -> solveLines(lines, from, to, PROPAGATORS.get()));
+
+        try (BufferedReader in = openInput(input); Writer out = openOutput(output)) {
+            return processor.process(in, out);
+        }
+    }
+
+    /**
+     * Opens a buffered UTF-8 reader over a file, or over standard input for "-".
+     */
+    static BufferedReader openInput(String path) throws IOException {
+        InputStream stream = path.equals("-") ? System.in : new FileInputStream(path);
+        return new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8), 1 << 16);
+    }
+
+    /**
+     * Opens a buffered UTF-8 writer to a file, or to standard output for "-".
+     */
+    static Writer openOutput(String path) throws IOException {
+        OutputStream stream = path.equals("-") ? new FilterOutputStream(System.out) {
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        } : new FileOutputStream(path);
+        return new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), 1 << 16);
+    }
+}
@@ -0,0 +1,253 @@
+package KSudoku;
+
+/**
+ * Authoritative state of the board being played, kept in primitive arrays.
+ * Holds the digit of every cell, the givens, the cells holding something
+ * that is not a digit, the cells colliding with a peer, and the pencil-mark
+ * candidates of every cell. Collisions and candidates are maintained
+ * incrementally from per-unit digit counters, so a single edit costs a
+ * pass over the units of the edited cell and one over its peers (20 on the
+ * classic board), whatever rules the Geometry compiled into them.
+ * The View only renders this state. BoardState does not depend on AWT.
+ */
+public class BoardState {
+    private final Geometry geometry;    /* board shape */
+    private final int stride;           /* N + 1 counters per unit */
+    private byte[] values;              /* digit in each cell, 0 when empty or invalid */
+    private long[] givens;              /* bit c is set when cell c is a given */
+    private long[] invalid;             /* bit c is set when cell c holds something other than a digit */
+    private long[] conflicts;           /* bit c is set when the digit of cell c appears again in its units */
+    private int[] unitDigitCounts;      /* how many times digit d is in unit u, at [u * stride + d] */
+    private long[] candidates;          /* per cell, digits absent from all of its units */
+
+    /**
+     * BoardState class default constructor. Creates an empty classic board.
+     */
+    public BoardState() {
+        this(Geometry.CLASSIC);
+    }
+
+    /**
+     * BoardState class constructor. Creates an empty board.
+     * @param geometry shape of the board.
+     */
+    public BoardState(Geometry geometry) {
+        this.geometry = geometry;
+        stride = geometry.size + 1;
+        int words = (geometry.cells + 63) >>> 6;
+        values = new byte[geometry.cells];
+        givens = new long[words];
+        invalid = new long[words];
+        conflicts = new long[words];
+        unitDigitCounts = new int[geometry.units * stride];
+        candidates = new long[geometry.cells];
+    }
+
+    /**
+     * Returns the shape of the board.
+     * @return the geometry.
+     */
+    public Geometry getGeometry() {
+        return geometry;
+    }
+
+    /**
+     * Clears the board and puts the givens of a puzzle on it.
+     * @param puzzle the new puzzle, of the same geometry as the board.
+     */
+    public void reset(Puzzle puzzle) {
+        for (int i = 0; i < givens.length; ++i) {
+            givens[i] = 0;
+            invalid[i] = 0;
+            conflicts[i] = 0;
+        }
+        for (int i = 0; i < unitDigitCounts.length; ++i)
+            unitDigitCounts[i] = 0;
+
+        for (int cell = 0; cell < geometry.cells; ++cell) {
+            values[cell] = 0;
+            candidates[cell] = geometry.all;
+        }
+        for (int cell = 0; cell < geometry.cells; ++cell) {
+            if (puzzle.isGiven(cell)) {
+                givens[cell >>> 6] |= 1L << cell;
+                add(cell, puzzle.get(cell));
+            }
+        }
+    }
+
+    /**
+     * Changes the content of a cell.
+     * @param cell cell index in row-major order.
+     * @param digit new digit, 0 for an empty cell, -1 for anything that is not a digit.
+     */
+    public void set(int cell, int digit) {
+        if (digit < 0)
+            invalid[cell >>> 6] |= 1L << cell;
+        else
+            invalid[cell >>> 6] &= ~(1L << cell);
+
+        int old = values[cell];
+        int value = Math.max(digit, 0);
+        if (old == value)
+            return;
+
+        remove(cell);
+        add(cell, value);
+    }
+
+    /**
+     * Returns the digit of a cell.
+     * @param cell cell index in row-major order.
+     * @return digit from 1 to N, 0 when empty or invalid.
+     */
+    public int get(int cell) {
+        return values[cell];
+    }
+
+    /**
+     * Tells whether a cell is a given of the current puzzle.
+     * @param cell cell index in row-major order.
+     * @return true for a given.
+     */
+    public boolean isGiven(int cell) {
+        return (givens[cell >>> 6] & (1L << cell)) != 0;
+    }
+
+    /**
+     * Tells whether a cell holds something that is not a single digit.
+     * @param cell cell index in row-major order.
+     * @return true for invalid content.
+     */
+    public boolean isInvalid(int cell) {
+        return (invalid[cell >>> 6] & (1L << cell)) != 0;
+    }
+
+    /**
+     * Tells whether the digit of a cell appears again in one of its units.
+     * @param cell cell index in row-major order.
+     * @return true if the cell collides with a peer.
+     */
+    public boolean isConflict(int cell) {
+        return (conflicts[cell >>> 6] & (1L << cell)) != 0;
+    }
+
+    /**
+     * Returns the pencil-mark candidates of a cell: the digits that appear
+     * nowhere in its units.
+     * @param cell cell index in row-major order.
+     * @return mask with bit d - 1 set for candidate d, 0 for a filled cell.
+     */
+    public long getCandidates(int cell) {
+        return values[cell] == 0 ? candidates[cell] : 0;
+    }
+
+    /**
+     * Tells whether a cell holds its digit from the solution.
+     * @param cell cell index in row-major order.
+     * @param puzzle the puzzle being played.
+     * @return true for the correct digit.
+     */
+    public boolean isCorrect(int cell, Puzzle puzzle) {
+        return values[cell] == puzzle.get(cell);
+    }
+
+    /**
+     * Tells whether the whole board matches the solution.
+     * @param puzzle the puzzle being played.
+     * @return true when every cell holds its correct digit.
+     */
+    public boolean isSolved(Puzzle puzzle) {
+        for (int cell = 0; cell < geometry.cells; ++cell)
+            if (values[cell] != puzzle.get(cell))
+                return false;
+        return true;
+    }
+
+    /**
+     * Puts a digit to an empty cell, updating counters and conflicts.
+     */
+    private void add(int cell, int digit) {
+        values[cell] = (byte) digit;
+        if (digit == 0)
+            return;
+
+        int[] cellUnits = geometry.cellUnits;
+        for (int k = geometry.cellUnitsStart[cell]; k < geometry.cellUnitsStart[cell + 1]; ++k)
+            unitDigitCounts[cellUnits[k] * stride + digit]++;
+
+        updatePeers(cell, digit, true);
+    }
+
+    /**
+     * Empties a cell, updating counters and conflicts.
+     */
+    private void remove(int cell) {
+        int digit = values[cell];
+        values[cell] = 0;
+        conflicts[cell >>> 6] &= ~(1L << cell);
+        if (digit == 0)
+            return;
+
+        int[] cellUnits = geometry.cellUnits;
+        for (int k = geometry.cellUnitsStart[cell]; k < geometry.cellUnitsStart[cell + 1]; ++k)
+            unitDigitCounts[cellUnits[k] * stride + digit]--;
+
+        updatePeers(cell, digit, false);
+    }
+
+    /**
+     * Recomputes the conflict bits of a cell and of its peers holding the digit,
+     * and the digit's candidate bit of the cell and of all its peers.
+     * An added digit is no candidate anywhere around, a removed one has to
+     * be checked against the counters.
+     */
+    private void updatePeers(int cell, int digit, boolean added) {
+        long bit = 1L << (digit - 1);
+        updateConflict(cell);
+        if (added)
+            candidates[cell] &= ~bit;
+        else
+            updateCandidate(cell, digit, bit);
+
+        for (int k = geometry.peersStart[cell]; k < geometry.peersStart[cell + 1]; ++k) {
+            int peer = geometry.peers[k];
+            if (values[peer] == digit)
+                updateConflict(peer);
+            if (added)
+                candidates[peer] &= ~bit;
+            else
+                updateCandidate(peer, digit, bit);
+        }
+    }
+
+    /**
+     * Recomputes one candidate bit of a cell from the unit counters.
+     */
+    private void updateCandidate(int cell, int digit, long bit) {
+        int[] cellUnits = geometry.cellUnits;
+        for (int k = geometry.cellUnitsStart[cell]; k < geometry.cellUnitsStart[cell + 1]; ++k)
+            if (unitDigitCounts[cellUnits[k] * stride + digit] != 0) {
+                candidates[cell] &= ~bit;
+                return;
+            }
+        candidates[cell] |= bit;
+    }
+
+    /**
+     * Recomputes the conflict bit of a single cell from the unit counters.
+     */
+    private void updateConflict(int cell) {
+        int digit = values[cell];
+        int[] cellUnits = geometry.cellUnits;
+        boolean conflict = false;
+        if (digit != 0)
+            for (int k = geometry.cellUnitsStart[cell]; k < geometry.cellUnitsStart[cell + 1] && !conflict; ++k)
+                conflict = unitDigitCounts[cellUnits[k] * stride + digit] > 1;
+
+        if (conflict)
+            conflicts[cell >>> 6] |= 1L << cell;
+        else
+            conflicts[cell >>> 6] &= ~(1L << cell);
+    }
+}
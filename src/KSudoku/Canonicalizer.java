@@ -0,0 +1,341 @@
+package KSudoku;
+
+/**
+ * Computes a canonical form of a puzzle under the sudoku symmetries:
+ * digit relabeling, row and column permutations within bands and stacks,
+ * band and stack permutations, and transposition. Two puzzles have the
+ * same canonical form exactly when one can be turned into the other.
+ *
+ * The canonical solution grid is the lexicographically smallest image
+ * among transformations whose top row has the smallest invariant key,
+ * the key being the cycle types of the permutations that map the row's
+ * digits to those of the two other rows of its band. The key is itself
+ * invariant, so restricting to it keeps the form canonical while cutting
+ * the search. Among transformations giving that grid, the smallest image
+ * of the givens mask is taken.
+ * Only classic 9x9 puzzles are supported.
+ * Working memory is allocated once, a Canonicalizer is not thread safe.
+ */
+public class Canonicalizer {
+    private static final int SIZE = Geometry.CLASSIC.size;
+    private static final int CELLS = Geometry.CLASSIC.cells;
+    private static final int PERMS = 1296;         /* 3! stack orders times 3!^3 column orders */
+
+    static final int[] COLUMN_PERMS;                /* permutation p lists columns p * 9 .. p * 9 + 8 */
+    static final int[] INVERSE_PERMS;               /* inverses of COLUMN_PERMS, same layout */
+    static final int[][] PERMS3 = {
+            {0, 1, 2}, {0, 2, 1}, {1, 0, 2}, {1, 2, 0}, {2, 0, 1}, {2, 1, 0}
+    };
+
+    static {
+        COLUMN_PERMS = new int[PERMS * SIZE];
+        INVERSE_PERMS = new int[PERMS * SIZE];
+        int p = 0;
+        for (int[] stacks : PERMS3)
+            for (int[] a : PERMS3)
+                for (int[] b : PERMS3)
+                    for (int[] c : PERMS3) {
+                        int[][] inner = {a, b, c};
+                        for (int s = 0; s < 3; ++s)
+                            for (int k = 0; k < 3; ++k)
+                                COLUMN_PERMS[p * SIZE + s * 3 + k] = stacks[s] * 3 + inner[s][k];
+                        for (int j = 0; j < SIZE; ++j)
+                            INVERSE_PERMS[p * SIZE + COLUMN_PERMS[p * SIZE + j]] = j;
+                        ++p;
+                    }
+    }
+
+    private int[] source;       /* solution digits, 0-based, transposed or not */
+    private int[] mask;         /* givens, 1 or 0 per cell, transposed like source */
+    private int[] position;     /* position[r * 9 + d]: column of digit d in row r */
+    private long[] keys;        /* invariant key of every top row candidate, both orientations */
+
+    private int[] best;         /* best grid so far */
+    private int[] bestMask;     /* best givens image for the best grid */
+    private int[] bestRow1;     /* second row of the best grid */
+    private int[] rowA;         /* relabeled second row candidates */
+    private int[] rowB;
+    private int[] grid;         /* candidate grid */
+    private int[] gridMask;     /* candidate givens image */
+    private int[] label;        /* candidate digit relabeling */
+    private int[] rowOrder;     /* candidate row order */
+    private boolean found;      /* whether best holds a grid */
+
+    /**
+     * Canonicalizer class default constructor.
+     */
+    public Canonicalizer() {
+        source = new int[CELLS];
+        mask = new int[CELLS];
+        position = new int[CELLS];
+        keys = new long[2 * SIZE];
+        best = new int[CELLS];
+        bestMask = new int[CELLS];
+        bestRow1 = new int[SIZE];
+        rowA = new int[SIZE];
+        rowB = new int[SIZE];
+        grid = new int[CELLS];
+        gridMask = new int[CELLS];
+        label = new int[SIZE];
+        rowOrder = new int[SIZE];
+    }
+
+    /**
+     * Computes the canonical form of a puzzle.
+     * @param puzzle the puzzle.
+     * @param gridOut receives the 81 canonical solution digits, 1 to 9.
+     * @param givensOut receives the canonical givens bitset, two words.
+     */
+    public void canonicalize(Puzzle puzzle, byte[] gridOut, long[] givensOut) {
+        run(puzzle);
+
+        givensOut[0] = 0;
+        givensOut[1] = 0;
+        for (int cell = 0; cell < CELLS; ++cell) {
+            gridOut[cell] = (byte) (best[cell] + 1);
+            if (bestMask[cell] != 0)
+                givensOut[cell >>> 6] |= 1L << cell;
+        }
+    }
+
+    /**
+     * Returns a 64-bit fingerprint of the canonical form of a puzzle.
+     * Equivalent puzzles have equal fingerprints; different ones collide
+     * with probability about 2^-64.
+     * @param puzzle the puzzle.
+     * @return the fingerprint.
+     */
+    public long fingerprint(Puzzle puzzle) {
+        run(puzzle);
+
+        long h = 0x9E3779B97F4A7C15L;
+        for (int cell = 0; cell < CELLS; ++cell)
+            h = mix(h ^ (best[cell] * 2 + bestMask[cell]));
+        return h;
+    }
+
+    private static long mix(long h) {
+        h *= 0xBF58476D1CE4E5B9L;
+        h ^= h >>> 31;
+        h *= 0x94D049BB133111EBL;
+        return h ^ (h >>> 29);
+    }
+
+    /**
+     * Searches both orientations for the canonical image.
+     */
+    private void run(Puzzle puzzle) {
+        if (puzzle.getGeometry() != Geometry.CLASSIC)
+            throw new IllegalArgumentException("Only classic puzzles can be canonicalized");
+        found = false;
+
+        /* Top row candidates with the smallest invariant key, in both orientations. */
+        for (int transpose = 0; transpose < 2; ++transpose) {
+            load(puzzle, transpose == 1);
+            for (int r0 = 0; r0 < SIZE; ++r0)
+                keys[transpose * SIZE + r0] = rowKey(r0);
+        }
+        long minKey = Long.MAX_VALUE;
+        for (long key : keys)
+            minKey = Math.min(minKey, key);
+
+        for (int transpose = 0; transpose < 2; ++transpose) {
+            load(puzzle, transpose == 1);
+            for (int r0 = 0; r0 < SIZE; ++r0)
+                if (keys[transpose * SIZE + r0] == minKey)
+                    searchColumns(r0);
+        }
+    }
+
+    /**
+     * Loads the puzzle, optionally transposed.
+     */
+    private void load(Puzzle puzzle, boolean transpose) {
+        for (int i = 0; i < SIZE; ++i)
+            for (int j = 0; j < SIZE; ++j) {
+                int from = transpose ? j * SIZE + i : i * SIZE + j;
+                source[i * SIZE + j] = puzzle.get(from) - 1;
+                mask[i * SIZE + j] = puzzle.isGiven(from) ? 1 : 0;
+            }
+        for (int i = 0; i < SIZE; ++i)
+            for (int j = 0; j < SIZE; ++j)
+                position[i * SIZE + source[i * SIZE + j]] = j;
+    }
+
+    /**
+     * Invariant key of a top row: the cycle types of the column permutations
+     * taking it to the two other rows of its band, in sorted order.
+     */
+    private long rowKey(int r0) {
+        int band = r0 / 3 * 3;
+        long a = -1, b = -1;
+        for (int r = band; r < band + 3; ++r)
+            if (r != r0) {
+                int type = cycleType(r0, r);
+                if (a < 0)
+                    a = type;
+                else
+                    b = type;
+            }
+        return (Math.min(a, b) << 24) | Math.max(a, b);
+    }
+
+    /**
+     * Cycle type of sigma(c) = column of row r0 holding the digit at (r, c),
+     * encoded as the number of cycles of each length, 3 bits per length.
+     * Sigma has no fixed points, so lengths run from 2 to 9.
+     */
+    private int cycleType(int r0, int r) {
+        int seen = 0, counts = 0;
+        for (int start = 0; start < SIZE; ++start) {
+            if ((seen & (1 << start)) != 0)
+                continue;
+            int length = 0;
+            for (int c = start; (seen & (1 << c)) == 0; c = position[r0 * SIZE + source[r * SIZE + c]]) {
+                seen |= 1 << c;
+                ++length;
+            }
+            counts += 1 << (3 * (length - 2));
+        }
+        return counts;
+    }
+
+    /**
+     * Tries every column permutation for a top row.
+     */
+    private void searchColumns(int r0) {
+        int band = r0 / 3 * 3;
+        int ra = band + (r0 == band ? 1 : 0);
+        int rb = band + (r0 == band + 2 ? 1 : 2);
+
+        for (int p = 0; p < PERMS; ++p) {
+            int first = p * SIZE;
+
+            /* Skip unless one of the band's two other rows can beat the best second row. */
+            if (found && compareToBest(ra, r0, first) > 0 && compareToBest(rb, r0, first) > 0)
+                continue;
+
+            /* Second row: the smaller of the band's two other rows, relabeled. */
+            relabelRow(ra, r0, first, rowA);
+            relabelRow(rb, r0, first, rowB);
+            boolean aFirst = compareRows(rowA, rowB) < 0;
+
+            if (aFirst)
+                evaluate(r0, ra, rb, first);
+            else
+                evaluate(r0, rb, ra, first);
+        }
+    }
+
+    /**
+     * Relabels a row so that the top row reads 0 .. 8 under a column permutation.
+     */
+    private void relabelRow(int r, int r0, int first, int[] out) {
+        for (int j = 0; j < SIZE; ++j)
+            out[j] = INVERSE_PERMS[first + position[r0 * SIZE + source[r * SIZE + COLUMN_PERMS[first + j]]]];
+    }
+
+    /**
+     * Compares a relabeled row with the best second row, stopping at the first difference.
+     */
+    private int compareToBest(int r, int r0, int first) {
+        for (int j = 0; j < SIZE; ++j) {
+            int v = INVERSE_PERMS[first + position[r0 * SIZE + source[r * SIZE + COLUMN_PERMS[first + j]]]];
+            if (v != bestRow1[j])
+                return v - bestRow1[j];
+        }
+        return 0;
+    }
+
+    private static int compareRows(int[] a, int[] b) {
+        for (int j = 0; j < SIZE; ++j)
+            if (a[j] != b[j])
+                return a[j] - b[j];
+        return 0;
+    }
+
+    /**
+     * Builds the candidate grid for a top band and a column permutation,
+     * ordering the remaining bands and their rows to be smallest,
+     * and keeps it if it beats the best one.
+     */
+    private void evaluate(int r0, int r1, int r2, int first) {
+        for (int d = 0; d < SIZE; ++d)
+            label[d] = INVERSE_PERMS[first + position[r0 * SIZE + d]];
+
+        /* Rows of the two other bands, each band sorted, bands ordered by their rows. */
+        rowOrder[0] = r0;
+        rowOrder[1] = r1;
+        rowOrder[2] = r2;
+        int band = r0 / 3;
+        int bandA = band == 0 ? 1 : 0, bandB = band == 2 ? 1 : 2;
+        sortBand(bandA * 3, 3, first);
+        sortBand(bandB * 3, 6, first);
+        if (compareRelabeled(rowOrder[3], rowOrder[6], first) > 0
+                || (compareRelabeled(rowOrder[3], rowOrder[6], first) == 0
+                && (compareRelabeled(rowOrder[4], rowOrder[7], first) > 0
+                || (compareRelabeled(rowOrder[4], rowOrder[7], first) == 0
+                && compareRelabeled(rowOrder[5], rowOrder[8], first) > 0)))) {
+            sortBand(bandB * 3, 3, first);
+            sortBand(bandA * 3, 6, first);
+        }
+
+        /* Build the grid, giving up as soon as it compares greater than the best one. */
+        int cmp = found ? 0 : -1;
+        for (int i = 0; i < SIZE; ++i)
+            for (int j = 0; j < SIZE; ++j) {
+                int cell = i * SIZE + j;
+                int v = label[source[rowOrder[i] * SIZE + COLUMN_PERMS[first + j]]];
+                if (cmp == 0 && v != best[cell]) {
+                    if (v > best[cell])
+                        return;
+                    cmp = -1;
+                }
+                grid[cell] = v;
+            }
+
+        for (int i = 0; i < SIZE; ++i)
+            for (int j = 0; j < SIZE; ++j)
+                gridMask[i * SIZE + j] = mask[rowOrder[i] * SIZE + COLUMN_PERMS[first + j]];
+        if (cmp == 0 && compare(gridMask, bestMask) >= 0)
+            return;
+
+        System.arraycopy(grid, 0, best, 0, CELLS);
+        System.arraycopy(gridMask, 0, bestMask, 0, CELLS);
+        System.arraycopy(grid, SIZE, bestRow1, 0, SIZE);
+        found = true;
+    }
+
+    /**
+     * Writes the rows of a band to rowOrder[at .. at + 2] in relabeled lexicographic order.
+     */
+    private void sortBand(int firstRow, int at, int first) {
+        int a = firstRow, b = firstRow + 1, c = firstRow + 2, t;
+        if (compareRelabeled(a, b, first) > 0) { t = a; a = b; b = t; }
+        if (compareRelabeled(b, c, first) > 0) { t = b; b = c; c = t; }
+        if (compareRelabeled(a, b, first) > 0) { t = a; a = b; b = t; }
+        rowOrder[at] = a;
+        rowOrder[at + 1] = b;
+        rowOrder[at + 2] = c;
+    }
+
+    /**
+     * Compares two rows under the candidate relabeling and column permutation.
+     */
+    private int compareRelabeled(int ra, int rb, int first) {
+        for (int j = 0; j < SIZE; ++j) {
+            int col = COLUMN_PERMS[first + j];
+            int va = label[source[ra * SIZE + col]], vb = label[source[rb * SIZE + col]];
+            if (va != vb)
+                return va - vb;
+        }
+        return 0;
+    }
+
+    private static int compare(int[] a, int[] b) {
+        for (int i = 0; i < CELLS; ++i)
+            if (a[i] != b[i])
+                return a[i] - b[i];
+        return 0;
+    }
+}
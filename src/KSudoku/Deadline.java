@@ -0,0 +1,79 @@
+package KSudoku;
+
+/**
+ * Latency bound of one solve, count, hint or generate call: a point in
+ * System.nanoTime() time, a cancellation token set by another thread, or
+ * both. Engines poll it while they search and, when it is over, stop and
+ * return the partial result they have: the deductions made so far, the
+ * solutions counted so far, or a puzzle with more givens.
+ * A Deadline is thread safe and meant for a single call, possibly split
+ * across workers; it remembers whether an engine stopped short because of it.
+ */
+public class Deadline {
+    /** No time limit and never cancelled. */
+    public static final Deadline NONE = new Deadline(0, false);
+
+    private final long at;                  /* System.nanoTime() value the call must end by */
+    private final boolean timed;            /* whether at is set */
+    private volatile boolean cancelled;     /* set by cancel() */
+    private volatile boolean interrupted;   /* set when an engine stopped short */
+
+    private Deadline(long at, boolean timed) {
+        this.at = at;
+        this.timed = timed;
+    }
+
+    /**
+     * Creates a deadline some time from now.
+     * @param nanos time the call may take, in nanoseconds.
+     * @return the deadline.
+     */
+    public static Deadline in(long nanos) {
+        return new Deadline(System.nanoTime() + nanos, true);
+    }
+
+    /**
+     * Creates a deadline without a time limit, only ended by cancel().
+     * @return the cancellation token.
+     */
+    public static Deadline cancellable() {
+        return new Deadline(0, false);
+    }
+
+    /**
+     * Ends the deadline now, e.g. when the caller does not need the result anymore.
+     */
+    public void cancel() {
+        if (this != NONE)
+            cancelled = true;
+    }
+
+    /**
+     * Tells whether the time is up or the deadline was cancelled.
+     * @return true when the call should end.
+     */
+    public boolean isExpired() {
+        return cancelled || (timed && System.nanoTime() - at >= 0);
+    }
+
+    /**
+     * Tells whether the time is up or the deadline was cancelled, and if
+     * so records that the polling engine stops short.
+     * @return true when the engine should stop.
+     */
+    boolean poll() {
+        if (!isExpired())
+            return false;
+        interrupted = true;
+        return true;
+    }
+
+    /**
+     * Tells whether an engine stopped short because of this deadline, so
+     * its result is partial.
+     * @return true if the result is partial.
+     */
+    public boolean wasInterrupted() {
+        return interrupted;
+    }
+}
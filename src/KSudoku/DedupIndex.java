@@ -0,0 +1,96 @@
+package KSudoku;
+
+/**
+ * Set of canonical puzzle fingerprints, used to reject puzzles equivalent
+ * to ones already generated or imported.
+ * Open addressing over a primitive long array with linear probing, so
+ * lookups and inserts take constant time and 8 to 16 bytes per entry.
+ * Not thread safe.
+ */
+public class DedupIndex {
+    static final int MAX_CAPACITY = 1 << 30;            /* largest power of two array length */
+    static final int MAX_ENTRIES = MAX_CAPACITY / 2;    /* entries kept at the maximum load of one half */
+    private static final long EMPTY = 0;    /* marks a free slot; fingerprint 0 is stored as 1 */
+
+    private long[] table;                   /* fingerprints, power of two length */
+    private int size;                       /* number of stored fingerprints */
+
+    /**
+     * DedupIndex class constructor.
+     * @param expected expected number of entries, at most MAX_ENTRIES are
+     *                 preallocated; the index grows past it if needed.
+     */
+    public DedupIndex(int expected) {
+        expected = Math.min(expected, MAX_ENTRIES);
+        int capacity = Integer.highestOneBit(Math.max(16, expected * 2 - 1)) << 1;
+        table = new long[capacity];
+    }
+
+    /**
+     * Adds a fingerprint.
+     * @param fingerprint canonical fingerprint of a puzzle.
+     * @return true if it was not in the index yet.
+     * @throws IllegalStateException when the index holds MAX_ENTRIES already.
+     */
+    public boolean add(long fingerprint) {
+        if (fingerprint == EMPTY)
+            fingerprint = 1;
+        if (2 * (size + 1) > table.length)
+            grow();
+
+        int mask = table.length - 1;
+        for (int i = spread(fingerprint) & mask; ; i = (i + 1) & mask) {
+            if (table[i] == fingerprint)
+                return false;
+            if (table[i] == EMPTY) {
+                table[i] = fingerprint;
+                ++size;
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Tells whether a fingerprint is in the index.
+     * @param fingerprint canonical fingerprint of a puzzle.
+     * @return true if it was added before.
+     */
+    public boolean contains(long fingerprint) {
+        if (fingerprint == EMPTY)
+            fingerprint = 1;
+
+        int mask = table.length - 1;
+        for (int i = spread(fingerprint) & mask; table[i] != EMPTY; i = (i + 1) & mask)
+            if (table[i] == fingerprint)
+                return true;
+        return false;
+    }
+
+    /**
+     * Returns the number of stored fingerprints.
+     * @return entries count.
+     */
+    public int size() {
+        return size;
+    }
+
+    private static int spread(long fingerprint) {
+        return (int) (fingerprint ^ (fingerprint >>> 32));
+    }
+
+    private void grow() {
+        if (table.length >= MAX_CAPACITY)
+            throw new IllegalStateException("Dedup index is full: " + size + " fingerprints");
+        long[] old = table;
+        table = new long[old.length * 2];
+        int mask = table.length - 1;
+
+        for (long fingerprint : old)
+            if (fingerprint != EMPTY) {
+                int i = spread(fingerprint) & mask;
+                while (table[i] != EMPTY)
+                    i = (i + 1) & mask;
+                table[i] = fingerprint;
+            }
+    }
+}
@@ -0,0 +1,12 @@
+package KSudoku;
+
+/**
+ * Difficulty levels the puzzles are served by.
+ * A puzzle's level follows from the hardest technique needed to solve it.
+ */
+public enum Difficulty {
+    EASY,       /* singles only */
+    MEDIUM,     /* locked candidates and pairs */
+    HARD,       /* triples and fish */
+    EXPERT      /* no known technique applies, guessing needed */
+}
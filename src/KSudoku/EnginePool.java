@@ -0,0 +1,44 @@
+package KSudoku;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Supplier;
+
+/**
+ * Lock-free pool of idle engines (solvers, generators, raters), which are
+ * not thread safe themselves. A caller takes an engine, uses it alone and
+ * gives it back. New engines are created only when all are busy, so the
+ * pool grows to the peak number of concurrent callers. Unlike a ThreadLocal
+ * it does not create an engine per thread, which matters with many
+ * short-lived threads and with large boards, whose engines are big.
+ * @param <T> engine type.
+ */
+public class EnginePool<T> {
+    private final ConcurrentLinkedQueue<T> idle;    /* engines nobody is using */
+    private final Supplier<T> factory;              /* creates an engine when none is idle */
+
+    /**
+     * EnginePool class constructor.
+     * @param factory creates a new engine.
+     */
+    public EnginePool(Supplier<T> factory) {
+        this.factory = factory;
+        idle = new ConcurrentLinkedQueue<>();
+    }
+
+    /**
+     * Takes an idle engine, or creates one if none is idle.
+     * @return an engine for the caller's exclusive use.
+     */
+    public T take() {
+        T engine = idle.poll();
+        return engine != null ? engine : factory.get();
+    }
+
+    /**
+     * Gives an engine back to the pool.
+     * @param engine an engine taken from this pool, not used any more by the caller.
+     */
+    public void give(T engine) {
+        idle.offer(engine);
+    }
+}
@@ -0,0 +1,431 @@
+package KSudoku;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Autosaved game with undo and redo: a snapshot file plus an append-only
+ * move journal, both little-endian like the corpus files.
+ * The snapshot holds the "KSDS" magic, format version, box size and the
+ * puzzle id, then the solution and the board packed two cells per byte
+ * (high nibble first; one byte per cell on boards of more than 15 digits)
+ * and the givens bitmask. It is only written when a game starts, to a
+ * temporary file moved over the old one.
+ * The journal starts with the "KSDJ" magic and the puzzle id, followed by
+ * 4 byte entries: the cell with the entry kind in the top two bits, then
+ * the old and the new digit. Every move, undo and redo appends one entry
+ * with a single write to the channel, so a crash of the application loses
+ * nothing and an edit never rewrites the board. A journal whose puzzle id
+ * does not match the snapshot, or a torn last entry, is ignored.
+ * Undo and redo walk an in-memory move history, rebuilt from the journal
+ * when a game is restored. When the files cannot be written, the game goes
+ * on with the history in memory only.
+ */
+public class GameJournal implements Closeable {
+    static final int SNAPSHOT_MAGIC = 0x4B534453;   /* "KSDS" */
+    static final int JOURNAL_MAGIC = 0x4B53444A;    /* "KSDJ" */
+    static final short VERSION = 1;                 /* current snapshot format version */
+    static final int SNAPSHOT_HEADER_SIZE = 16;     /* magic, version, box size, reserved byte, puzzle id */
+    static final int JOURNAL_HEADER_SIZE = 12;      /* magic, puzzle id */
+    static final int ENTRY_SIZE = 4;                /* kind and cell, old digit, new digit */
+
+    static final int MOVE = 0, UNDO = 1, REDO = 2;  /* journal entry kinds */
+    private static final int KIND_SHIFT = 14;       /* position of the kind in the cell short */
+    private static final int CELL_MASK = (1 << KIND_SHIFT) - 1;
+
+    private final Geometry geometry;    /* shape of the saved boards */
+    private final Path snapshotPath;    /* the snapshot file */
+    private final Path journalPath;     /* the journal file */
+    private final ByteBuffer entry;     /* reused to write one journal entry */
+
+    private FileChannel journal;        /* open journal, null when not saving */
+    private Puzzle puzzle;              /* the puzzle being played */
+    private int[] grid;                 /* board digits, as of the last move */
+    private int[] moves;                /* history of packed moves: cell, old and new digit */
+    private int position;               /* moves before it are done, after it undone */
+    private int count;                  /* used moves entries */
+
+    /**
+     * GameJournal class constructor. Does not touch the files yet.
+     * @param directory directory of the save files, created when needed;
+     *                  null to keep the history in memory only.
+     * @param geometry shape of the boards; each shape has its own files.
+     */
+    public GameJournal(Path directory, Geometry geometry) {
+        this.geometry = geometry;
+        snapshotPath = directory == null ? null : directory.resolve("game" + geometry.size + ".snapshot");
+        journalPath = directory == null ? null : directory.resolve("game" + geometry.size + ".journal");
+        entry = ByteBuffer.allocateDirect(ENTRY_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        grid = new int[geometry.cells];
+        moves = new int[64];
+    }
+
+    /**
+     * Returns the default save directory, .ksudoku in the user's home.
+     * @return directory path.
+     */
+    public static Path defaultDirectory() {
+        return Paths.get(System.getProperty("user.home"), ".ksudoku");
+    }
+
+    /**
+     * Reads the saved game, replays its journal and keeps appending to it.
+     * @return the saved puzzle, or null when there is no readable save.
+     */
+    public Puzzle restore() {
+        try {
+            if (snapshotPath == null || !Files.exists(snapshotPath) || !readSnapshot())
+                return null;
+            openJournal(true);
+            return puzzle;
+        } catch (IOException e) {
+            System.err.println("Cannot restore the saved game: " + e.getMessage());
+            closeJournal();
+            puzzle = null;
+            return null;
+        }
+    }
+
+    /**
+     * Starts saving a new game: writes its snapshot, starts a new journal
+     * and clears the history.
+     * @param newPuzzle the puzzle to play, the board holds its givens.
+     */
+    public void start(Puzzle newPuzzle) {
+        puzzle = newPuzzle;
+        for (int cell = 0; cell < geometry.cells; ++cell)
+            grid[cell] = puzzle.isGiven(cell) ? puzzle.get(cell) : 0;
+        position = count = 0;
+
+        closeJournal();
+        if (snapshotPath == null)
+            return;
+        try {
+            writeSnapshot();
+            openJournal(false);
+        } catch (IOException e) {
+            System.err.println("Cannot save the game: " + e.getMessage());
+            closeJournal();
+        }
+    }
+
+    /**
+     * Returns the board of the game, as of the last move.
+     * @return digits in row-major order, 0 for an empty cell. Not to be modified.
+     */
+    public int[] getGrid() {
+        return grid;
+    }
+
+    /**
+     * Records a move of the player, dropping the moves undone before it.
+     * @param cell cell index in row-major order.
+     * @param oldDigit digit before the move, 0 for an empty cell.
+     * @param newDigit digit after the move, 0 for an empty cell.
+     */
+    public void record(int cell, int oldDigit, int newDigit) {
+        if (position == moves.length)
+            moves = Arrays.copyOf(moves, moves.length * 2);
+        moves[position++] = pack(cell, oldDigit, newDigit);
+        count = position;
+        grid[cell] = newDigit;
+        append(MOVE, cell, oldDigit, newDigit);
+    }
+
+    /**
+     * Undoes the last move that is not undone yet.
+     * @return the packed move, whose old digit is to be put back,
+     *         or -1 when there is nothing to undo.
+     */
+    public int undo() {
+        if (position == 0)
+            return -1;
+
+        int move = moves[--position];
+        grid[cellOf(move)] = oldDigitOf(move);
+        append(UNDO, cellOf(move), oldDigitOf(move), newDigitOf(move));
+        return move;
+    }
+
+    /**
+     * Redoes the last undone move.
+     * @return the packed move, whose new digit is to be put back,
+     *         or -1 when there is nothing to redo.
+     */
+    public int redo() {
+        if (position == count)
+            return -1;
+
+        int move = moves[position++];
+        grid[cellOf(move)] = newDigitOf(move);
+        append(REDO, cellOf(move), oldDigitOf(move), newDigitOf(move));
+        return move;
+    }
+
+    /**
+     * Returns the cell of a packed move.
+     * @param move move from undo() or redo().
+     * @return cell index.
+     */
+    public static int cellOf(int move) {
+        return move >>> 16;
+    }
+
+    /**
+     * Returns the digit a packed move replaced.
+     * @param move move from undo() or redo().
+     * @return digit, 0 for an empty cell.
+     */
+    public static int oldDigitOf(int move) {
+        return (move >>> 8) & 0xFF;
+    }
+
+    /**
+     * Returns the digit a packed move put.
+     * @param move move from undo() or redo().
+     * @return digit, 0 for an empty cell.
+     */
+    public static int newDigitOf(int move) {
+        return move & 0xFF;
+    }
+
+    private static int pack(int cell, int oldDigit, int newDigit) {
+        return cell << 16 | oldDigit << 8 | newDigit;
+    }
+
+    /**
+     * Closes the journal, forcing it to the disk. The history is kept.
+     */
+    @Override
+    public void close() {
+        if (journal != null)
+            try {
+                journal.force(false);
+            } catch (IOException e) {
+                System.err.println("Cannot save the game: " + e.getMessage());
+            }
+        closeJournal();
+    }
+
+    /**
+     * Appends one entry to the journal, written to the channel at once so
+     * that a crash loses no move.
+     */
+    private void append(int kind, int cell, int oldDigit, int newDigit) {
+        if (journal == null)
+            return;
+
+        entry.clear();
+        entry.putShort((short) (kind << KIND_SHIFT | cell)).put((byte) oldDigit).put((byte) newDigit).flip();
+        try {
+            while (entry.hasRemaining())
+                journal.write(entry);
+        } catch (IOException e) {
+            System.err.println("Cannot save the move, autosave is off: " + e.getMessage());
+            closeJournal();
+        }
+    }
+
+    private void closeJournal() {
+        if (journal == null)
+            return;
+        try {
+            journal.close();
+        } catch (IOException e) {
+            /* Nothing more to save. */
+        }
+        journal = null;
+    }
+
+    /**
+     * Packs the puzzle and the board into the snapshot file.
+     */
+    private void writeSnapshot() throws IOException {
+        int digitBytes = digitBytes();
+        ByteBuffer out = ByteBuffer.allocate(SNAPSHOT_HEADER_SIZE + 2 * digitBytes + (geometry.cells + 7) / 8)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        out.putInt(SNAPSHOT_MAGIC).putShort(VERSION).put((byte) geometry.boxSize).put((byte) 0).putLong(puzzle.getId());
+
+        int[] solution = new int[geometry.cells];
+        for (int cell = 0; cell < geometry.cells; ++cell)
+            solution[cell] = puzzle.get(cell);
+        packDigits(solution, out);
+        packDigits(grid, out);
+        for (int i = 0; i < (geometry.cells + 7) / 8; ++i) {
+            int bits = 0;
+            for (int b = 0; b < 8 && i * 8 + b < geometry.cells; ++b)
+                if (puzzle.isGiven(i * 8 + b))
+                    bits |= 1 << b;
+            out.put((byte) bits);
+        }
+        out.flip();
+
+        Files.createDirectories(snapshotPath.getParent());
+        Path temporary = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (out.hasRemaining())
+                channel.write(out);
+            channel.force(false);
+        }
+        Files.move(temporary, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads the snapshot file into the puzzle and the board. Nothing is
+     * changed unless the whole snapshot, its puzzle id included, is valid.
+     * @return false when the file is not a snapshot of this board shape.
+     */
+    private boolean readSnapshot() throws IOException {
+        int digitBytes = digitBytes(), givensBytes = (geometry.cells + 7) / 8;
+        byte[] bytes = Files.readAllBytes(snapshotPath);
+        if (bytes.length != SNAPSHOT_HEADER_SIZE + 2 * digitBytes + givensBytes)
+            return false;
+
+        ByteBuffer in = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        if (in.getInt() != SNAPSHOT_MAGIC || in.getShort() != VERSION || in.get() != geometry.boxSize)
+            return false;
+        in.get();
+        long id = in.getLong();
+
+        int[] solution = new int[geometry.cells], board = new int[geometry.cells];
+        if (!unpackDigits(in, solution) || !unpackDigits(in, board))
+            return false;
+        byte[] digits = new byte[geometry.cells];
+        long[] givens = new long[(geometry.cells + 63) >>> 6];
+        for (int cell = 0; cell < geometry.cells; ++cell) {
+            if (solution[cell] == 0)
+                return false;
+            digits[cell] = (byte) solution[cell];
+        }
+        for (int i = 0; i < givensBytes; ++i)
+            givens[i >>> 3] |= (in.get() & 0xFFL) << ((i & 7) * 8);
+
+        Puzzle saved = new Puzzle(geometry, digits, givens);
+        if (saved.getId() != id)
+            return false;
+
+        puzzle = saved;
+        position = count = 0;
+        for (int cell = 0; cell < geometry.cells; ++cell)
+            grid[cell] = puzzle.isGiven(cell) ? solution[cell] : board[cell];
+        return true;
+    }
+
+    /**
+     * Opens the journal for appending. When replaying, applies the entries
+     * of the current puzzle to the board and the history, and cuts a torn
+     * last entry; otherwise, or when the journal belongs to another puzzle,
+     * starts it anew.
+     */
+    private void openJournal(boolean replay) throws IOException {
+        Files.createDirectories(journalPath.getParent());
+        journal = FileChannel.open(journalPath, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        long valid = replay ? replay() : -1;
+        if (valid < 0) {
+            ByteBuffer header = ByteBuffer.allocate(JOURNAL_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(JOURNAL_MAGIC).putLong(puzzle.getId()).flip();
+            journal.truncate(0);
+            while (header.hasRemaining())
+                journal.write(header, header.position());
+            valid = JOURNAL_HEADER_SIZE;
+        }
+        journal.truncate(valid);
+        journal.position(valid);
+    }
+
+    /**
+     * Replays the journal.
+     * @return length of its valid part, -1 when it does not belong to the puzzle.
+     */
+    private long replay() throws IOException {
+        long size = journal.size();
+        if (size < JOURNAL_HEADER_SIZE || size > Integer.MAX_VALUE)
+            return -1;
+
+        ByteBuffer in = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+        while (in.hasRemaining() && journal.read(in, in.position()) >= 0) {}
+        in.flip();
+        if (in.getInt() != JOURNAL_MAGIC || in.getLong() != puzzle.getId())
+            return -1;
+
+        while (in.remaining() >= ENTRY_SIZE) {
+            int head = in.getShort() & 0xFFFF;
+            int kind = head >>> KIND_SHIFT, cell = head & CELL_MASK;
+            int oldDigit = in.get(), newDigit = in.get();
+            if (cell >= geometry.cells || puzzle.isGiven(cell)
+                    || oldDigit < 0 || oldDigit > geometry.size || newDigit < 0 || newDigit > geometry.size)
+                return in.position() - ENTRY_SIZE;
+
+            if (kind == MOVE) {
+                if (position == moves.length)
+                    moves = Arrays.copyOf(moves, moves.length * 2);
+                moves[position++] = pack(cell, oldDigit, newDigit);
+                count = position;
+                grid[cell] = newDigit;
+            } else if (kind == UNDO && position > 0) {
+                --position;
+                grid[cell] = oldDigit;
+            } else if (kind == REDO && position < count) {
+                ++position;
+                grid[cell] = newDigit;
+            } else
+                return in.position() - ENTRY_SIZE;
+        }
+        return in.position();
+    }
+
+    /**
+     * Returns the length of a packed grid: two cells per byte, or one
+     * on boards whose digits do not fit a nibble.
+     */
+    private int digitBytes() {
+        return geometry.size < 16 ? (geometry.cells + 1) / 2 : geometry.cells;
+    }
+
+    private void packDigits(int[] digits, ByteBuffer out) {
+        if (geometry.size >= 16) {
+            for (int digit : digits)
+                out.put((byte) digit);
+            return;
+        }
+
+        for (int i = 0; i < digits.length; i += 2) {
+            int low = i + 1 < digits.length ? digits[i + 1] : 0;
+            out.put((byte) (digits[i] << 4 | low));
+        }
+    }
+
+    /**
+     * Unpacks a grid.
+     * @return false when a digit is out of range.
+     */
+    private boolean unpackDigits(ByteBuffer in, int[] digits) {
+        for (int i = 0; i < digits.length; ) {
+            int packed = in.get() & 0xFF;
+            if (geometry.size >= 16)
+                digits[i++] = packed;
+            else {
+                digits[i++] = packed >>> 4;
+                if (i < digits.length)
+                    digits[i++] = packed & 0xF;
+            }
+        }
+
+        for (int digit : digits)
+            if (digit > geometry.size)
+                return false;
+        return true;
+    }
+}
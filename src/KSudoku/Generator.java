@@ -0,0 +1,161 @@
+package KSudoku;
+
+import java.util.Random;
+
+/**
+ * Procedural puzzle generator.
+ * Builds a random complete grid with the Solver, then hides digits in
+ * random order, keeping each removal only if the puzzle still has
+ * exactly one solution. Digits are removed in pairs symmetric about the
+ * centre of the grid. On boards larger than 9x9 every uniqueness check
+ * gets a node budget; a removal whose check runs out of budget is undone,
+ * so puzzles stay unique while generation time stays bounded. A Deadline
+ * bounds a whole generation: removals stop when it is over, leaving a
+ * unique puzzle with more givens.
+ * A Generator instance is not thread safe.
+ */
+public class Generator {
+    private static final long LARGE_BOARD_NODE_LIMIT = 64;     /* branches allowed per check above 9x9 */
+    private static final long FILL_NODE_LIMIT = 4096;          /* branches allowed to fill a large grid */
+
+    private Geometry geometry;  /* board shape */
+    private Random rand;        /* random numbers generator */
+    private Solver solver;      /* solver used to fill grids and check uniqueness */
+    private int[] solved;       /* the complete grid being generated */
+    private int[] puzzle;       /* the grid with removed digits */
+    private int[] order;        /* order in which cells are tried for removal */
+    private DedupIndex dedupIndex;          /* fingerprints of puzzles already produced, may be null */
+    private Canonicalizer canonicalizer;    /* computes fingerprints for the dedup index */
+    private SolutionCounter counter;        /* parallel uniqueness checks, null to check on the solver */
+
+    /**
+     * Generator class constructor, for the classic 9x9 board.
+     * @param rand random numbers generator deciding the grid and the removal order.
+     */
+    public Generator(Random rand) {
+        this(Geometry.CLASSIC, rand);
+    }
+
+    /**
+     * Generator class constructor.
+     * @param geometry shape of the boards to generate.
+     * @param rand random numbers generator deciding the grid and the removal order.
+     */
+    public Generator(Geometry geometry, Random rand) {
+        this.geometry = geometry;
+        this.rand = rand;
+        solver = new Solver(geometry);
+        solved = new int[geometry.cells];
+        puzzle = new int[geometry.cells];
+        order = new int[geometry.cells];
+    }
+
+    /**
+     * Makes the generator skip puzzles equivalent to ones in the index.
+     * Every puzzle returned afterwards is added to the index.
+     * @param index fingerprints of known puzzles, null to allow duplicates.
+     */
+    public void setDedupIndex(DedupIndex index) {
+        if (index != null && geometry != Geometry.CLASSIC)
+            throw new IllegalArgumentException("Deduplication supports the classic board only");
+
+        dedupIndex = index;
+        if (index != null && canonicalizer == null)
+            canonicalizer = new Canonicalizer();
+    }
+
+    /**
+     * Makes the generator check uniqueness with a parallel solution counter.
+     * Worth it when puzzles are generated while somebody waits and spare
+     * cores are idle. Only for the classic board: checks on larger boards
+     * have a node budget and stay on the generator's own solver.
+     * @param counter counter for the generator's geometry, null to check sequentially.
+     */
+    public void setSolutionCounter(SolutionCounter counter) {
+        if (counter != null && geometry != Geometry.CLASSIC)
+            throw new IllegalArgumentException("Parallel uniqueness checks support the classic board only");
+
+        this.counter = counter;
+    }
+
+    /**
+     * Generates a new puzzle with a unique solution, not equivalent to any
+     * puzzle in the dedup index when one is set.
+     * @return the puzzle.
+     */
+    public Puzzle generate() {
+        return generate(Deadline.NONE);
+    }
+
+    /**
+     * Generates a new puzzle with a unique solution within a deadline.
+     * When the time runs out during the removals, the puzzle keeps the
+     * digits not tried yet, and is accepted even if the dedup index already
+     * holds an equivalent one.
+     * @param deadline time limit or cancellation token of the generation.
+     * @return the puzzle, or null if no complete grid was filled in time.
+     */
+    public Puzzle generate(Deadline deadline) {
+        solver.setDeadline(deadline);
+        try {
+            while (true) {
+                Puzzle puzzle = generateAny(deadline);
+                if (puzzle == null || dedupIndex == null
+                        || dedupIndex.add(canonicalizer.fingerprint(puzzle)) || deadline.isExpired())
+                    return puzzle;
+            }
+        } finally {
+            solver.setDeadline(Deadline.NONE);
+        }
+    }
+
+    /**
+     * Generates a new puzzle with a unique solution.
+     * @return the puzzle, or null if the deadline ended the grid filling.
+     */
+    private Puzzle generateAny(Deadline deadline) {
+        int cells = geometry.cells;
+        boolean large = geometry.size > Geometry.CLASSIC.size;
+
+        /* Random complete grid, started again if a large one gets stuck. */
+        solver.setNodeLimit(large ? FILL_NODE_LIMIT : Long.MAX_VALUE);
+        do {
+            if (deadline.poll())
+                return null;
+            for (int cell = 0; cell < cells; ++cell)
+                solved[cell] = 0;
+        } while (!solver.solveRandom(solved, rand));
+        System.arraycopy(solved, 0, puzzle, 0, cells);
+
+        /* Random removal order over one half of the grid and the centre. */
+        solver.setNodeLimit(large ? LARGE_BOARD_NODE_LIMIT : Long.MAX_VALUE);
+        int half = (cells + 1) / 2;
+        for (int i = 0; i < half; ++i)
+            order[i] = i;
+        for (int i = half - 1; i > 0; --i) {
+            int j = rand.nextInt(i + 1);
+            int t = order[i];
+            order[i] = order[j];
+            order[j] = t;
+        }
+
+        /* Hide a cell and its mirror, put them back if the solution stops being unique
+         * or the check ran out of time. */
+        for (int i = 0; i < half && !deadline.poll(); ++i) {
+            int cell = order[i];
+            int mirror = cells - 1 - cell;
+
+            puzzle[cell] = 0;
+            puzzle[mirror] = 0;
+
+            boolean unique = counter != null ? counter.count(puzzle, 2, deadline) == 1 && !deadline.isExpired()
+                    : solver.countSolutions(puzzle, 2) == 1 && !solver.wasAborted();
+            if (!unique) {
+                puzzle[cell] = solved[cell];
+                puzzle[mirror] = solved[mirror];
+            }
+        }
+
+        return Puzzle.fromGrids(geometry, solved, puzzle);
+    }
+}
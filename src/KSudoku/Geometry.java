@@ -0,0 +1,328 @@
+package KSudoku;
+
+import java.util.Arrays;
+
+/**
+ * Shape of a sudoku board: an N x N grid made of n x n boxes, N = n * n,
+ * and the rules played on it, as a constraint graph. Precomputes flat
+ * tables of the units (groups of N cells holding every digit once) and of
+ * the peers of every cell, shared by the solver, the rater, the board state
+ * and the validators, which all run over these tables only.
+ * Cells are numbered in row-major order, units are the N rows, then the
+ * N columns, then the N regions: the boxes, or irregular regions on a
+ * jigsaw board. Rule variants add units after those: the two diagonals
+ * (DIAGONALS), then the windows, boxes shifted by one cell (WINDOWS).
+ * A cell is in 3 to 5 units, its row, column and region coming first.
+ * Geometries are immutable and equal when they have the same units, so
+ * variants built again key the same map entries. Classic geometries are
+ * cached, one per box size.
+ */
+public class Geometry {
+    static final int MIN_BOX_SIZE = 2;          /* 4x4 boards */
+    static final int MAX_BOX_SIZE = 5;          /* 25x25 boards */
+    static final int MAX_UNITS = 3 * MAX_BOX_SIZE * MAX_BOX_SIZE + 2 + (MAX_BOX_SIZE - 1) * (MAX_BOX_SIZE - 1);
+
+    static final int DIAGONALS = 1;             /* variant: digits are unique on both diagonals (sudoku X) */
+    static final int WINDOWS = 2;               /* variant: and in the windows (windoku) */
+    static final int JIGSAW = 4;                /* variant: irregular regions replace the boxes */
+
+    /** A 9x9 jigsaw layout, region r of each cell given as the symbol of r + 1. */
+    public static final String JIGSAW_LAYOUT_9 =
+            "111133333" + "112222223" + "111255333" + "444225666" + "444555666"
+            + "477555666" + "478888999" + "477888899" + "777789999";
+
+    private static final Geometry[] CACHE = new Geometry[MAX_BOX_SIZE + 1];
+    private static final String SYMBOLS = "123456789ABCDEFGHIJKLMNOP";     /* digit d is shown as SYMBOLS[d - 1] */
+
+    /** The classic 9x9 board. */
+    public static final Geometry CLASSIC = of(3);
+
+    final int boxSize;          /* n, side of a box */
+    final int size;             /* N, digits in a unit */
+    final int cells;            /* N * N */
+    final int units;            /* 3 * N, plus the variant units */
+    final long all;             /* mask with all N digits set */
+    final int maxPeers;         /* most peers of a cell */
+    final int variant;          /* DIAGONALS, WINDOWS and JIGSAW flags */
+
+    final int[] unitCells;      /* cells of unit u are at [u * N, u * N + N) */
+    final int[] cellUnits;      /* units of cell c are at [cellUnitsStart[c], cellUnitsStart[c + 1]), row, column and region first */
+    final int[] cellUnitsStart;
+    final int[] peers;          /* peers of cell c are at [peersStart[c], peersStart[c + 1]), in increasing order */
+    final int[] peersStart;
+    private final int hash;     /* hash of the box size, the variant and the units */
+
+    private Geometry(int boxSize, int[] regions /* null for boxes */, int variant) {
+        this.boxSize = boxSize;
+        this.variant = variant;
+        size = boxSize * boxSize;
+        cells = size * size;
+        all = (1L << size) - 1;
+        int windows = (variant & WINDOWS) != 0 ? (boxSize - 1) * (boxSize - 1) : 0;
+        units = 3 * size + ((variant & DIAGONALS) != 0 ? 2 : 0) + windows;
+
+        /* Rows, columns and regions, cells of a region in row-major order. */
+        unitCells = new int[units * size];
+        int[] filled = new int[size];
+        for (int i = 0; i < size; ++i)
+            for (int j = 0; j < size; ++j) {
+                int cell = i * size + j;
+                int region = regions != null ? regions[cell] : (i / boxSize) * boxSize + j / boxSize;
+                unitCells[i * size + j] = cell;
+                unitCells[(size + j) * size + i] = cell;
+                unitCells[(2 * size + region) * size + filled[region]++] = cell;
+            }
+
+        int unit = 3 * size;
+        if ((variant & DIAGONALS) != 0) {
+            for (int i = 0; i < size; ++i) {
+                unitCells[unit * size + i] = i * size + i;
+                unitCells[(unit + 1) * size + i] = i * size + size - 1 - i;
+            }
+            unit += 2;
+        }
+        for (int w = 0; w < windows; ++w, ++unit) {
+            int top = 1 + (w / (boxSize - 1)) * (boxSize + 1), left = 1 + (w % (boxSize - 1)) * (boxSize + 1);
+            for (int k = 0; k < size; ++k)
+                unitCells[unit * size + k] = (top + k / boxSize) * size + left + k % boxSize;
+        }
+
+        /* Units of each cell, in unit order: row, column and region come first. */
+        cellUnitsStart = new int[cells + 1];
+        for (int k = 0; k < unitCells.length; ++k)
+            cellUnitsStart[unitCells[k] + 1]++;
+        for (int cell = 0; cell < cells; ++cell)
+            cellUnitsStart[cell + 1] += cellUnitsStart[cell];
+        cellUnits = new int[unitCells.length];
+        int[] next = cellUnitsStart.clone();
+        for (int u = 0; u < units; ++u)
+            for (int k = 0; k < size; ++k)
+                cellUnits[next[unitCells[u * size + k]]++] = u;
+
+        /* Peers: the other cells of the cell's units, each once. */
+        peersStart = new int[cells + 1];
+        int[] buffer = new int[cells * 5 * size];
+        boolean[] peer = new boolean[cells];
+        int count = 0, most = 0;
+        for (int cell = 0; cell < cells; ++cell) {
+            for (int k = cellUnitsStart[cell]; k < cellUnitsStart[cell + 1]; ++k)
+                for (int m = 0; m < size; ++m)
+                    peer[unitCells[cellUnits[k] * size + m]] = true;
+            peer[cell] = false;
+            int first = count;
+            for (int other = 0; other < cells; ++other)
+                if (peer[other]) {
+                    buffer[count++] = other;
+                    peer[other] = false;
+                }
+            most = Math.max(most, count - first);
+            peersStart[cell + 1] = count;
+        }
+        peers = Arrays.copyOf(buffer, count);
+        maxPeers = most;
+        hash = (31 * boxSize + variant) * 31 + Arrays.hashCode(unitCells);
+    }
+
+    /**
+     * Returns the classic geometry with the given box size.
+     * @param boxSize side of a box, from 2 to 5 (4x4 to 25x25 boards).
+     * @return the geometry.
+     */
+    public static synchronized Geometry of(int boxSize) {
+        if (boxSize < MIN_BOX_SIZE || boxSize > MAX_BOX_SIZE)
+            throw new IllegalArgumentException("Box size must be in [" + MIN_BOX_SIZE + ", "
+                    + MAX_BOX_SIZE + "]: " + boxSize);
+        if (CACHE[boxSize] == null)
+            CACHE[boxSize] = new Geometry(boxSize, null, 0);
+        return CACHE[boxSize];
+    }
+
+    /**
+     * Returns this geometry with digits also unique on both diagonals (sudoku X).
+     * @return the new geometry, or this one if it already has the rule.
+     */
+    public Geometry withDiagonals() {
+        return (variant & DIAGONALS) != 0 ? this : new Geometry(boxSize, regions(), variant | DIAGONALS);
+    }
+
+    /**
+     * Returns this geometry with digits also unique in the windows, the
+     * (n - 1)^2 boxes shifted right and down by one cell (windoku).
+     * @return the new geometry, or this one if it already has the rule.
+     */
+    public Geometry withWindows() {
+        return (variant & WINDOWS) != 0 ? this : new Geometry(boxSize, regions(), variant | WINDOWS);
+    }
+
+    /**
+     * Returns this geometry with irregular regions instead of the boxes (jigsaw).
+     * @param regions region from 0 to N - 1 of each cell in row-major order,
+     *                N cells per region.
+     * @return the new geometry.
+     */
+    public Geometry withRegions(int[] regions) {
+        if (regions.length != cells)
+            throw new IllegalArgumentException("Regions of " + cells + " cells expected: " + regions.length);
+        int[] counts = new int[size];
+        for (int region : regions) {
+            if (region < 0 || region >= size)
+                throw new IllegalArgumentException("Region must be in [0, " + (size - 1) + "]: " + region);
+            counts[region]++;
+        }
+        for (int region = 0; region < size; ++region)
+            if (counts[region] != size)
+                throw new IllegalArgumentException("Region " + region + " has " + counts[region] + " cells");
+        return new Geometry(boxSize, regions.clone(), variant | JIGSAW);
+    }
+
+    /**
+     * Parses a jigsaw layout, e.g. JIGSAW_LAYOUT_9, for withRegions().
+     * @param layout N * N symbols, the symbol of region r + 1 for each cell.
+     * @return the regions, or null when a symbol is out of range.
+     */
+    public int[] parseRegions(String layout) {
+        int[] regions = new int[layout.length()];
+        for (int cell = 0; cell < regions.length; ++cell) {
+            int digit = digitOf(layout.charAt(cell));
+            if (digit <= 0)
+                return null;
+            regions[cell] = digit - 1;
+        }
+        return regions;
+    }
+
+    /**
+     * Returns the regions of the cells, null when they are the boxes.
+     */
+    private int[] regions() {
+        if ((variant & JIGSAW) == 0)
+            return null;
+        int[] regions = new int[cells];
+        for (int cell = 0; cell < cells; ++cell)
+            regions[cell] = regionOf(cell);
+        return regions;
+    }
+
+    /**
+     * Returns the geometry whose grid has the given number of cells.
+     * @param cells number of cells, e.g. 81 for the classic board.
+     * @return the geometry, or null if no board has that many cells.
+     */
+    public static Geometry ofCells(int cells) {
+        for (int n = MIN_BOX_SIZE; n <= MAX_BOX_SIZE; ++n)
+            if (n * n * n * n == cells)
+                return of(n);
+        return null;
+    }
+
+    /**
+     * Returns the number of digits in a unit, i.e. the side of the board.
+     * @return N.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the side of a box.
+     * @return n.
+     */
+    public int getBoxSize() {
+        return boxSize;
+    }
+
+    /**
+     * Returns the number of cells.
+     * @return N * N.
+     */
+    public int getCells() {
+        return cells;
+    }
+
+    /**
+     * Returns the rule variants of this geometry.
+     * @return DIAGONALS, WINDOWS and JIGSAW flags, 0 for classic rules.
+     */
+    public int getVariant() {
+        return variant;
+    }
+
+    /**
+     * Returns the name of the board and its rules, e.g. "9x9" or "9x9 X jigsaw".
+     * @return the name.
+     */
+    public String getName() {
+        return size + "x" + size + ((variant & DIAGONALS) != 0 ? " X" : "")
+                + ((variant & WINDOWS) != 0 ? " windoku" : "") + ((variant & JIGSAW) != 0 ? " jigsaw" : "");
+    }
+
+    /**
+     * Returns the region of a cell, its box unless on a jigsaw board.
+     * @param cell cell index in row-major order.
+     * @return region from 0 to N - 1.
+     */
+    public int regionOf(int cell) {
+        return cellUnits[cellUnitsStart[cell] + 2] - 2 * size;
+    }
+
+    /**
+     * Tells whether a cell is in a unit of the variant rules: a diagonal or a window.
+     * @param cell cell index in row-major order.
+     * @return true if the cell is in more than its row, column and region.
+     */
+    public boolean isInVariantUnit(int cell) {
+        return cellUnitsStart[cell + 1] - cellUnitsStart[cell] > 3;
+    }
+
+    /**
+     * Names a unit for the player, e.g. "row 3" or "diagonal 1".
+     * @param unit unit index.
+     * @return its kind and 1-based number among the units of that kind.
+     */
+    public String unitName(int unit) {
+        if (unit < 2 * size)
+            return (unit < size ? "row " : "column ") + (unit % size + 1);
+        if (unit < 3 * size)
+            return ((variant & JIGSAW) != 0 ? "region " : "box ") + (unit - 2 * size + 1);
+        if ((variant & DIAGONALS) != 0 && unit < 3 * size + 2)
+            return "diagonal " + (unit - 3 * size + 1);
+        return "window " + (unit - 3 * size - ((variant & DIAGONALS) != 0 ? 2 : 0) + 1);
+    }
+
+    /**
+     * Returns the character a digit is shown as: 1-9, then A, B, ...
+     * @param digit digit from 1 to N.
+     * @return the symbol.
+     */
+    public char symbol(int digit) {
+        return SYMBOLS.charAt(digit - 1);
+    }
+
+    /**
+     * Returns the digit a character stands for.
+     * @param c a character typed by the player or read from a file.
+     * @return digit from 1 to N, 0 for '.' or '0', -1 for anything else.
+     */
+    public int digitOf(char c) {
+        if (c == '.' || c == '0')
+            return 0;
+        int digit = SYMBOLS.indexOf(Character.toUpperCase(c)) + 1;
+        return digit >= 1 && digit <= size ? digit : -1;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other)
+            return true;
+        if (!(other instanceof Geometry))
+            return false;
+        Geometry geometry = (Geometry) other;
+        return geometry.hash == hash && geometry.boxSize == boxSize && geometry.variant == variant
+                && Arrays.equals(geometry.unitCells, unitCells);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+}
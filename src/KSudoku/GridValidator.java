@@ -0,0 +1,98 @@
+package KSudoku;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Headless validation of completed grids, e.g. tournament submissions.
+ * Each input line holds one grid in row-major order, in the BatchSolver
+ * format; the board size follows from the line length. A grid is checked
+ * against the sudoku rules alone, in one pass keeping a digit bitmask per
+ * unit, so no reference solution is needed. Each output line is the
+ * verdict: "valid", "incomplete" when a cell is empty, "duplicate in row r",
+ * "column c" or "box b" (1-based) for the unit of the first cell, in
+ * row-major order, repeating a digit, or "invalid" when the line is not
+ * a grid. Blank input lines stay blank.
+ * Lines are validated in parallel chunks by a LineProcessor, so memory
+ * use does not depend on the input size and verdicts keep the input order.
+ */
+public class GridValidator {
+    private static final int CHUNK_SIZE = 1 << 14;     /* lines read and validated at a time */
+
+    private static final ThreadLocal<long[]> MASKS =       /* digits seen in each unit */
+            ThreadLocal.withInitial(() -> new long[Geometry.MAX_UNITS]);
+
+    /**
+     * Validates a single grid line.
+     * @param line N * N digit symbols.
+     * @return the verdict.
+     */
+    static String validateLine(String line) {
+        String grid = line.trim();
+        if (grid.isEmpty())
+            return "";
+
+        Geometry geometry = Geometry.ofCells(grid.length());
+        if (geometry == null)
+            return "invalid";
+        return validate(geometry, grid);
+    }
+
+    /**
+     * Validates a grid against the rules of a geometry, variants included.
+     * @param geometry board shape and rules.
+     * @param grid geometry.cells digit symbols.
+     * @return the verdict, naming the unit with a duplicate, e.g. "diagonal 2".
+     */
+    static String validate(Geometry geometry, String grid) {
+        if (grid.length() != geometry.cells)
+            return "invalid";
+
+        long[] masks = MASKS.get();
+        Arrays.fill(masks, 0, geometry.units, 0);
+        boolean incomplete = false;
+        int duplicate = -1;     /* first unit found repeating a digit */
+
+        for (int cell = 0; cell < geometry.cells; ++cell) {
+            int digit = geometry.digitOf(grid.charAt(cell));
+            if (digit < 0)
+                return "invalid";
+            if (digit == 0) {
+                incomplete = true;
+                continue;
+            }
+
+            long bit = 1L << (digit - 1);
+            for (int k = geometry.cellUnitsStart[cell]; k < geometry.cellUnitsStart[cell + 1]; ++k) {
+                int unit = geometry.cellUnits[k];
+                if ((masks[unit] & bit) != 0 && duplicate < 0)
+                    duplicate = unit;
+                masks[unit] |= bit;
+            }
+        }
+
+        if (incomplete)
+            return "incomplete";
+        if (duplicate >= 0)
+            return "duplicate in " + geometry.unitName(duplicate);
+        return "valid";
+    }
+
+    /**
+     * Validates all grids of the input file on all cores.
+     * @param input input file path, "-" for standard input.
+     * @param output output file path, "-" for standard output.
+     * @return number of processed lines.
+     * @throws IOException when reading or writing fails.
+     */
+    public static long run(String input, String output) throws IOException {
+        LineProcessor processor = new LineProcessor(ForkJoinPool.commonPool(), CHUNK_SIZE, GridValidator::validateLine);
+
+        try (BufferedReader in = BatchSolver.openInput(input); Writer out = BatchSolver.openOutput(output)) {
+            return processor.process(in, out);
+        }
+    }
+}
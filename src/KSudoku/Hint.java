@@ -0,0 +1,53 @@
+package KSudoku;
+
+/**
+ * Next logical deduction on a board: a digit that can be placed in a cell,
+ * and the hardest technique needed to see it.
+ */
+public class Hint {
+    private final int cell;                 /* cell index in row-major order */
+    private final int digit;                /* digit that goes to the cell */
+    private final Technique technique;      /* hardest technique leading to it */
+
+    /**
+     * Hint class constructor.
+     * @param cell cell index in row-major order.
+     * @param digit digit that goes to the cell.
+     * @param technique hardest technique needed, GUESS when the digit
+     *                  was taken from the solution.
+     */
+    public Hint(int cell, int digit, Technique technique) {
+        this.cell = cell;
+        this.digit = digit;
+        this.technique = technique;
+    }
+
+    /**
+     * Returns the cell the hint is about.
+     * @return cell index in row-major order.
+     */
+    public int getCell() {
+        return cell;
+    }
+
+    /**
+     * Returns the digit that goes to the cell.
+     * @return digit from 1 to N.
+     */
+    public int getDigit() {
+        return digit;
+    }
+
+    /**
+     * Returns the hardest technique needed to find the digit.
+     * @return the technique.
+     */
+    public Technique getTechnique() {
+        return technique;
+    }
+
+    @Override
+    public String toString() {
+        return "Hint[cell=" + cell + ", digit=" + digit + ", technique=" + technique + "]";
+    }
+}
@@ -0,0 +1,368 @@
+package KSudoku;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local HTTP service serving the KSudoku engine to a web front end.
+ * Listens on the loopback interface only. All answers are JSON:
+ * GET /generate[?difficulty=easy|medium|hard|expert][&amp;box=n] gives a new
+ * puzzle and its solution; /solve?puzzle=line gives the solution of a puzzle;
+ * /validate?puzzle=line tells whether a puzzle is consistent and has a unique
+ * solution; /stats gives request counts, internal errors and latency
+ * percentiles per endpoint. An internal error answers 500 and is logged
+ * to the standard error stream with its stack trace.
+ * Puzzle lines are as in BatchSolver, and may also be sent as a POST body.
+ * Every request runs on its own virtual thread when the JVM has them,
+ * otherwise on a fixed pool of one thread per core. The Model and the
+ * engine pools are shared by all requests.
+ * Solve and validate results are cached by a SolutionCache, whose size is
+ * read from the ksudoku.cache.size system property, so a popular puzzle is
+ * searched once.
+ * Every request gets a Deadline, read in milliseconds from the
+ * ksudoku.http.deadlineMillis system property, on top of the node limit,
+ * so a pathological puzzle cannot hold a worker. A solve running out of
+ * time answers 503 with the deductions made so far.
+ */
+public class HttpService {
+    static final long SEARCH_NODE_LIMIT = 1_000_000;   /* branches a solve or validate request may take */
+    private static final int MAX_BODY_LENGTH = 4096;    /* longest accepted POST body, a 25x25 line is 625 */
+    static final String[] ENDPOINTS = {"generate", "solve", "validate", "stats"};
+
+    private final HttpServer server;                            /* the JDK HTTP server */
+    private final ExecutorService executor;                     /* runs the requests */
+    private final Model classicModel;                           /* generates classic puzzles */
+    private final Map<Geometry, Model> models;                  /* generate larger boards, created on first use */
+    private final Map<Geometry, EnginePool<Solver>> solvers;    /* solvers with a node limit, per board shape */
+    private final Map<String, LatencyHistogram> latencies;      /* per endpoint */
+    private final Map<String, AtomicLong> errors;               /* requests answered 500, per endpoint */
+    private final SolutionCache cache;                          /* results of solve and validate requests */
+    private final long deadlineNanos;                           /* time a request may take */
+
+    /**
+     * HttpService class constructor. Binds the port, does not start serving yet.
+     * @param port TCP port on the loopback interface, 0 for any free port.
+     * @param model model generating classic puzzles, e.g. from a corpus.
+     * @throws IOException when the port cannot be bound.
+     */
+    public HttpService(int port, Model model) throws IOException {
+        classicModel = model;
+        models = new ConcurrentHashMap<>();
+        solvers = new ConcurrentHashMap<>();
+        latencies = new ConcurrentHashMap<>();
+        errors = new ConcurrentHashMap<>();
+        for (String endpoint : ENDPOINTS) {
+            latencies.put(endpoint, new LatencyHistogram());
+            errors.put(endpoint, new AtomicLong());
+        }
+        cache = new SolutionCache(Integer.getInteger("ksudoku.cache.size", 16384));
+        deadlineNanos = Long.getLong("ksudoku.http.deadlineMillis", 2000) * 1_000_000;
+
+        executor = newExecutor();
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+        server.setExecutor(executor);
+        server.createContext("/generate", exchange -> serve(exchange, "generate", this::generate));
+        server.createContext("/solve", exchange -> serve(exchange, "solve", this::solve));
+        server.createContext("/validate", exchange -> serve(exchange, "validate", this::validate));
+        server.createContext("/stats", exchange -> serve(exchange, "stats", this::stats));
+    }
+
+    /**
+     * Creates a virtual thread per task executor when the JVM has one
+     * (Java 21 and later), found by reflection so the code still builds
+     * and runs on Java 17, where a fixed pool is used instead.
+     */
+    static ExecutorService newExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        }
+    }
+
+    /**
+     * Starts serving requests.
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops serving, waiting at most a second for requests in progress.
+     */
+    public void stop() {
+        server.stop(1);
+        executor.shutdown();
+    }
+
+    /**
+     * Returns the port the service listens on.
+     * @return TCP port.
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Returns the cache of solve and validate results, e.g. to read its statistics.
+     * @return the cache.
+     */
+    public SolutionCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Returns the latency histogram of an endpoint.
+     * @param endpoint "generate", "solve", "validate" or "stats".
+     * @return the histogram, null for an unknown endpoint.
+     */
+    public LatencyHistogram getLatency(String endpoint) {
+        return latencies.get(endpoint);
+    }
+
+    /**
+     * Returns the number of requests of an endpoint that failed with an internal error.
+     * @param endpoint "generate", "solve", "validate" or "stats".
+     * @return the errors count.
+     */
+    public long getErrors(String endpoint) {
+        return errors.get(endpoint).get();
+    }
+
+    /**
+     * A request handler, giving the status and JSON body of the answer.
+     */
+    interface Endpoint {
+        /**
+         * Handles a request.
+         * @param exchange the request.
+         * @return the answer.
+         * @throws IOException when reading the request fails.
+         */
+        Answer handle(HttpExchange exchange) throws IOException;
+    }
+
+    /**
+     * Status code and JSON body of an answer.
+     */
+    static class Answer {
+        final int status;       /* HTTP status code */
+        final String json;      /* body */
+
+        Answer(int status, String json) {
+            this.status = status;
+            this.json = json;
+        }
+
+        static Answer error(int status, String message) {
+            return new Answer(status, "{\"error\": \"" + message + "\"}");
+        }
+    }
+
+    /**
+     * Runs a handler, sends its answer and records the latency.
+     */
+    private void serve(HttpExchange exchange, String endpoint, Endpoint handler) throws IOException {
+        long start = System.nanoTime();
+        try {
+            Answer answer;
+            try {
+                answer = handler.handle(exchange);
+            } catch (RuntimeException e) {
+                errors.get(endpoint).incrementAndGet();
+                System.err.println("Internal error in " + exchange.getRequestMethod() + " " + exchange.getRequestURI());
+                e.printStackTrace();
+                answer = Answer.error(500, "internal error");
+            }
+
+            byte[] body = answer.json.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(answer.status, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+            latencies.get(endpoint).record(System.nanoTime() - start);
+        }
+    }
+
+    private Answer generate(HttpExchange exchange) {
+        Geometry geometry;
+        Difficulty difficulty = null;
+        try {
+            String box = parameter(exchange, "box");
+            String level = parameter(exchange, "difficulty");
+            geometry = box == null ? Geometry.CLASSIC : Geometry.of(Integer.parseInt(box));
+            if (level != null)
+                difficulty = Difficulty.valueOf(level.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return Answer.error(400, "bad box or difficulty");
+        }
+
+        Model model = geometry == Geometry.CLASSIC ? classicModel
+                : models.computeIfAbsent(geometry, Model::new);
+        Deadline deadline = Deadline.in(deadlineNanos);
+        Puzzle puzzle = difficulty == null ? model.newPuzzle(deadline) : model.newPuzzle(difficulty, deadline);
+        if (puzzle == null)
+            return Answer.error(503, "no puzzle of that difficulty found, try again");
+
+        int[] grid = puzzle.toGrid();
+        int[] solution = new int[grid.length];
+        for (int cell = 0; cell < grid.length; ++cell)
+            solution[cell] = puzzle.get(cell);
+
+        return new Answer(200, "{\"box\": " + geometry.boxSize
+                + ", \"puzzle\": \"" + BatchSolver.format(grid)
+                + "\", \"solution\": \"" + BatchSolver.format(solution)
+                + "\", \"difficulty\": \"" + puzzle.getDifficulty()
+                + "\", \"technique\": \"" + puzzle.getRating() + "\"}");
+    }
+
+    private Answer solve(HttpExchange exchange) throws IOException {
+        int[] grid = readPuzzle(exchange);
+        if (grid == null)
+            return Answer.error(400, "malformed puzzle");
+
+        int cached = cache.getSolution(grid);
+        if (cached == SolutionCache.SOLVED)
+            return new Answer(200, "{\"solution\": \"" + BatchSolver.format(grid) + "\"}");
+        if (cached == SolutionCache.UNSOLVABLE)
+            return Answer.error(422, "unsolvable");
+
+        int[] puzzle = grid.clone();
+        EnginePool<Solver> pool = solverPool(grid);
+        Solver solver = pool.take();
+        try {
+            solver.setDeadline(Deadline.in(deadlineNanos));
+            if (solver.solve(grid)) {
+                cache.putSolution(puzzle, grid);
+                return new Answer(200, "{\"solution\": \"" + BatchSolver.format(grid) + "\"}");
+            }
+            if (solver.wasAborted()) {
+                solver.getDeductions(grid);
+                return new Answer(503, "{\"error\": \"search limit exceeded\", \"partial\": \""
+                        + BatchSolver.format(grid) + "\"}");
+            }
+            cache.putSolution(puzzle, null);
+            return Answer.error(422, "unsolvable");
+        } finally {
+            solver.setDeadline(Deadline.NONE);
+            pool.give(solver);
+        }
+    }
+
+    private Answer validate(HttpExchange exchange) throws IOException {
+        int[] grid = readPuzzle(exchange);
+        if (grid == null)
+            return Answer.error(400, "malformed puzzle");
+
+        EnginePool<Solver> pool = solverPool(grid);
+        Solver solver = pool.take();
+        try {
+            solver.setDeadline(Deadline.in(deadlineNanos));
+            boolean consistent = solver.isConsistent(grid);
+            int solutions = consistent ? cache.getSolutions(grid) : 0;
+            if (solutions == SolutionCache.UNKNOWN) {
+                solutions = solver.countSolutions(grid, 2);
+                if (solver.wasAborted())
+                    return Answer.error(503, "search limit exceeded");
+                cache.putSolutions(grid, solutions);
+            }
+            return new Answer(200, "{\"consistent\": " + consistent
+                    + ", \"solvable\": " + (solutions > 0)
+                    + ", \"unique\": " + (solutions == 1) + "}");
+        } finally {
+            solver.setDeadline(Deadline.NONE);
+            pool.give(solver);
+        }
+    }
+
+    private Answer stats(HttpExchange exchange) {
+        StringBuilder json = new StringBuilder("{\"endpoints\": {");
+        for (int i = 0; i < ENDPOINTS.length; ++i) {
+            LatencyHistogram latency = latencies.get(ENDPOINTS[i]);
+            json.append(i > 0 ? ", " : "").append('"').append(ENDPOINTS[i]).append("\": ")
+                    .append(String.format(Locale.ROOT,
+                            "{\"count\": %d, \"errors\": %d, \"meanNanos\": %.0f, \"p50Nanos\": %d, \"p99Nanos\": %d, \"p999Nanos\": %d, \"maxNanos\": %d}",
+                            latency.getCount(), errors.get(ENDPOINTS[i]).get(), latency.getMean(), latency.getPercentile(50),
+                            latency.getPercentile(99), latency.getPercentile(99.9), latency.getMax()));
+        }
+        json.append('}');
+
+        json.append(String.format(Locale.ROOT, ", \"cache\": {\"size\": %d, \"hits\": %d, \"misses\": %d, \"hitRate\": %.3f, \"evictions\": %d}",
+                cache.size(), cache.getHits(), cache.getMisses(), cache.getHitRate(), cache.getEvictions()));
+
+        PuzzlePool pool = classicModel.getPool();
+        if (pool != null)
+            json.append(String.format(Locale.ROOT, ", \"pool\": {\"size\": %d, \"hits\": %d, \"misses\": %d, \"hitRate\": %.3f}",
+                    pool.size(), pool.getHits(), pool.getMisses(), pool.getHitRate()));
+        return new Answer(200, json.append('}').toString());
+    }
+
+    /**
+     * Returns the solver pool for the board shape of a grid.
+     */
+    private EnginePool<Solver> solverPool(int[] grid) {
+        return solvers.computeIfAbsent(Geometry.ofCells(grid.length), geometry -> new EnginePool<>(() -> {
+            Solver solver = new Solver(geometry);
+            solver.setNodeLimit(SEARCH_NODE_LIMIT);
+            return solver;
+        }));
+    }
+
+    /**
+     * Reads the puzzle line of a request, from the POST body or the puzzle parameter.
+     * @return the grid, or null if missing or malformed.
+     */
+    private static int[] readPuzzle(HttpExchange exchange) throws IOException {
+        String line;
+        if (exchange.getRequestMethod().equals("POST")) {
+            try (InputStream in = exchange.getRequestBody()) {
+                byte[] body = in.readNBytes(MAX_BODY_LENGTH + 1);
+                if (body.length > MAX_BODY_LENGTH)
+                    return null;
+                line = new String(body, StandardCharsets.UTF_8);
+            }
+        } else
+            try {
+                line = parameter(exchange, "puzzle");
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+
+        return line == null ? null : BatchSolver.parse(line.trim());
+    }
+
+    /**
+     * Returns a query parameter of a request, URL-decoded.
+     * @return the value, or null when absent.
+     * @throws IllegalArgumentException when the value has a malformed escape.
+     */
+    private static String parameter(HttpExchange exchange, String name) {
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null)
+            return null;
+
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0 && pair.substring(0, eq).equals(name))
+                return URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+        }
+        return null;
+    }
+}
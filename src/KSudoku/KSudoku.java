@@ -1,16 +1,100 @@
 package KSudoku;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Paths;
+
 /**
  * Class containing the main method of the KSudoku application.
+ * Part of the core: the Swing UI is loaded by name, so headless modes
+ * run without the ui directory on the class path and never load AWT.
  */
 public class KSudoku {
+    private static final String GUI_CLASS = "KSudoku.Gui";     /* compiled from the ui directory */
+
     /**
      * Sudoku main method.
-     * Creates Model, View and Controller of the MVC pattern.
-     * @param args
+     * With no arguments creates the Model and starts the Swing UI, see Gui.
+     * The game is saved in the .ksudoku directory of the user's home and
+     * resumed at the next start.
+     * The GUI and the HTTP service publish their latency metrics through JMX,
+     * see Metrics.
+     * With "--box n" does the same for boards of n x n boxes, e.g. 4 for 16x16.
+     * With "--solve input output" solves a puzzle file without the GUI,
+     * "-" stands for standard input or output.
+     * With "--solve-lanes input output" does the same, propagating several
+     * classic puzzles at once, with SIMD instructions when available.
+     * With "--validate input output" checks a file of completed grids
+     * against the rules, writing one verdict per line.
+     * With "--serve port" runs the local HTTP service instead of the GUI.
+     * With "--corpus file" plays puzzles from a corpus file instead of generating them.
+     * With "--build-corpus file count" generates a corpus file.
+     * With "--import-corpus puzzles file" builds a corpus file from puzzle lines,
+     * skipping duplicates.
+     * With "--rate corpus ratings" rates every puzzle of a corpus, writing
+     * one technique ordinal byte per puzzle to the ratings file.
+     * @param args command line arguments.
      */
-    public static void main (String[] args) {
-        Model model = new Model();
-        View view = new View();
-        Controller controller = new Controller(view, model);
+    public static void main (String[] args) throws IOException {
+        if (args.length == 0)
+            startGui(new Model());
+        else if (args.length == 2 && args[0].equals("--box"))
+            startGui(new Model(Geometry.of(Integer.parseInt(args[1]))));
+        else if (args.length == 2 && args[0].equals("--corpus"))
+            startGui(new Model(Paths.get(args[1])));
+        else if (args.length == 2 && args[0].equals("--serve")) {
+            Metrics.install(null);
+            HttpService service = new HttpService(Integer.parseInt(args[1]), new Model());
+            for (String endpoint : HttpService.ENDPOINTS)
+                Metrics.register("http." + endpoint, service.getLatency(endpoint));
+            service.start();
+            System.out.println("Listening on http://127.0.0.1:" + service.getPort());
+        }
+        else if (args.length == 3 && args[0].equals("--solve"))
+            BatchSolver.run(args[1], args[2]);
+        else if (args.length == 3 && args[0].equals("--solve-lanes"))
+            BatchSolver.runLanes(args[1], args[2]);
+        else if (args.length == 3 && args[0].equals("--validate"))
+            GridValidator.run(args[1], args[2]);
+        else if (args.length == 3 && args[0].equals("--build-corpus"))
+            PuzzleCorpus.build(Paths.get(args[1]), Long.parseLong(args[2]));
+        else if (args.length == 3 && args[0].equals("--import-corpus")) {
+            try (BufferedReader in = BatchSolver.openInput(args[1])) {
+                System.out.println(PuzzleCorpus.importPuzzles(in, Paths.get(args[2])) + " puzzles imported");
+            }
+        }
+        else if (args.length == 3 && args[0].equals("--rate")) {
+            try (PuzzleCorpus corpus = PuzzleCorpus.open(Paths.get(args[1]))) {
+                long[] histogram = Rater.rateCorpus(corpus, Paths.get(args[2]));
+                for (Technique technique : Technique.values())
+                    System.out.println(technique + " " + histogram[technique.ordinal()]);
+            }
+        }
+        else {
+            System.err.println("Usage: KSudoku [--box <size> | --serve <port> | --corpus <file> | --solve[-lanes] <input> <output>"
+                    + " | --validate <input> <output>"
+                    + " | --build-corpus <file> <count> | --import-corpus <puzzles> <file>"
+                    + " | --rate <corpus> <ratings>]");
+            System.exit(2);
+        }
+    }
+
+    /**
+     * Starts the Swing UI on a Model, or exits when its classes are missing.
+     */
+    private static void startGui(Model model) {
+        try {
+            Class.forName(GUI_CLASS).getMethod("start", Model.class).invoke(null, model);
+        } catch (ClassNotFoundException e) {
+            System.err.println("The Swing UI is not on the class path, compile the ui directory too");
+            System.exit(2);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
     }
 }
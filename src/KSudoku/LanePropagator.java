@@ -0,0 +1,42 @@
+package KSudoku;
+
+/**
+ * Candidate propagation over several puzzles at once, one puzzle per lane.
+ * Candidates are int masks, bit d - 1 for digit d, laid out cell-major:
+ * the mask of cell c in lane l is at c * lanes() + l, so the masks of one
+ * cell in all lanes are adjacent and can be processed by SIMD instructions.
+ * Implementations apply naked and hidden singles unit by unit until no
+ * lane changes. A lane with a contradiction ends with an empty mask.
+ */
+interface LanePropagator {
+    /** Class of the SIMD implementation, compiled from the vector source directory. */
+    String VECTOR_CLASS = "KSudoku.VectorPropagator";
+
+    /**
+     * Returns the number of puzzles propagated at once.
+     * @return lanes count.
+     */
+    int lanes();
+
+    /**
+     * Propagates the candidates of lanes() puzzles.
+     * @param candidates geometry.cells * lanes() masks, updated in place.
+     */
+    void propagate(int[] candidates);
+
+    /**
+     * Creates the fastest available propagator: the Vector API one when
+     * its class was compiled and the jdk.incubator.vector module is added
+     * to the JVM, the scalar one otherwise.
+     * @param geometry shape of the puzzles.
+     * @return the propagator.
+     */
+    static LanePropagator create(Geometry geometry) {
+        try {
+            return (LanePropagator) Class.forName(VECTOR_CLASS)
+                    .getConstructor(Geometry.class).newInstance(geometry);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return new ScalarPropagator(geometry);
+        }
+    }
+}
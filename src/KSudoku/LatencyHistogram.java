@@ -0,0 +1,141 @@
+package KSudoku;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram with log-linear buckets.
+ * Values below 8 get a bucket each, above that every power of two is split
+ * into 8 equal buckets, so a reported percentile is at most 12.5% above
+ * the true value. Recording is a few atomic increments, it never blocks
+ * and never allocates, any number of threads may record and read at the
+ * same time. Histograms can be published through JMX, see Metrics.
+ */
+public class LatencyHistogram implements LatencyHistogramMBean {
+    private static final int SUB_BUCKETS = 8;          /* buckets per power of two */
+    private static final int SUB_BITS = 3;             /* log2(SUB_BUCKETS) */
+
+    private final AtomicLongArray counts;   /* values recorded in each bucket */
+    private final AtomicLong count;         /* values recorded */
+    private final AtomicLong sum;           /* sum of recorded values */
+    private final AtomicLong max;           /* largest recorded value */
+
+    /**
+     * LatencyHistogram class default constructor. Creates an empty histogram.
+     */
+    public LatencyHistogram() {
+        counts = new AtomicLongArray(64 * SUB_BUCKETS);
+        count = new AtomicLong();
+        sum = new AtomicLong();
+        max = new AtomicLong();
+    }
+
+    /**
+     * Records a value.
+     * @param nanos latency in nanoseconds, negative values count as 0.
+     */
+    public void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        counts.incrementAndGet(bucket(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    /**
+     * Returns the number of recorded values.
+     * @return values count.
+     */
+    @Override
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Returns the mean of recorded values.
+     * @return mean in nanoseconds, 0 when empty.
+     */
+    @Override
+    public double getMean() {
+        long n = count.get();
+        return n == 0 ? 0 : (double) sum.get() / n;
+    }
+
+    /**
+     * Returns the largest recorded value.
+     * @return maximum in nanoseconds, 0 when empty.
+     */
+    @Override
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Returns a percentile of recorded values, as the upper bound of the
+     * bucket holding it.
+     * @param percentile from 0 to 100, e.g. 99.9.
+     * @return the percentile in nanoseconds, 0 when empty.
+     */
+    @Override
+    public long getPercentile(double percentile) {
+        long total = 0;
+        for (int i = 0; i < counts.length(); ++i)
+            total += counts.get(i);
+        if (total == 0)
+            return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); ++i) {
+            seen += counts.get(i);
+            if (seen >= rank)
+                return Math.min(upperBound(i), max.get());
+        }
+        return max.get();
+    }
+
+    @Override
+    public long getP50() {
+        return getPercentile(50);
+    }
+
+    @Override
+    public long getP99() {
+        return getPercentile(99);
+    }
+
+    @Override
+    public long getP999() {
+        return getPercentile(99.9);
+    }
+
+    /**
+     * Returns the bucket of a value.
+     */
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * Returns the largest value falling into a bucket.
+     */
+    static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS)
+            return bucket;
+
+        int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - SUB_BITS);
+        return lower + (1L << (exponent - SUB_BITS)) - 1;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d mean=%.0fns p50=%dns p99=%dns p99.9=%dns max=%dns",
+                getCount(), getMean(), getPercentile(50), getPercentile(99), getPercentile(99.9), getMax());
+    }
+}
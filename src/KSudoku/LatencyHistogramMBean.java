@@ -0,0 +1,49 @@
+package KSudoku;
+
+/**
+ * JMX view of a LatencyHistogram. All values are in nanoseconds.
+ */
+public interface LatencyHistogramMBean {
+    /**
+     * Returns the number of recorded values.
+     * @return values count.
+     */
+    long getCount();
+
+    /**
+     * Returns the mean of recorded values.
+     * @return mean, 0 when empty.
+     */
+    double getMean();
+
+    /**
+     * Returns the median of recorded values.
+     * @return 50th percentile, 0 when empty.
+     */
+    long getP50();
+
+    /**
+     * Returns the 99th percentile of recorded values.
+     * @return 99th percentile, 0 when empty.
+     */
+    long getP99();
+
+    /**
+     * Returns the 99.9th percentile of recorded values.
+     * @return 99.9th percentile, 0 when empty.
+     */
+    long getP999();
+
+    /**
+     * Returns the largest recorded value.
+     * @return maximum, 0 when empty.
+     */
+    long getMax();
+
+    /**
+     * Returns any percentile of recorded values.
+     * @param percentile from 0 to 100.
+     * @return the percentile, 0 when empty.
+     */
+    long getPercentile(double percentile);
+}
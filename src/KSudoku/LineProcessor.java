@@ -0,0 +1,143 @@
+package KSudoku;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.UnaryOperator;
+
+/**
+ * Applies a function to every line of a text stream in parallel,
+ * writing results in input order.
+ * Input is read in fixed-size chunks. While one chunk is processed on
+ * the fork-join pool the next one is read, so at most two chunks are
+ * held in memory whatever the size of the input.
+ */
+public class LineProcessor {
+    private static final int SPLIT_THRESHOLD = 256;     /* lines handled by a single fork-join leaf */
+
+    private ForkJoinPool pool;                  /* pool the chunks are processed on */
+    private int chunkSize;                      /* lines per chunk */
+    private RangeFunction function;             /* replaces lines with their results, must be thread safe */
+
+    /**
+     * Replaces a range of lines with their output lines, e.g. to handle
+     * several lines together.
+     */
+    public interface RangeFunction {
+        /**
+         * Processes lines[from] to lines[to - 1], replacing each with its result.
+         * @param lines the lines of a chunk.
+         * @param from first line of the range.
+         * @param to end of the range, exclusive.
+         */
+        void apply(String[] lines, int from, int to);
+    }
+
+    /**
+     * LineProcessor class constructor.
+     * @param pool fork-join pool to run on.
+     * @param chunkSize number of lines read and processed at a time.
+     * @param function maps an input line to an output line. Called from many threads at once.
+     */
+    public LineProcessor(ForkJoinPool pool, int chunkSize, UnaryOperator<String> function) {
+        this(pool, chunkSize, (lines, from, to) -> {
+            for (int i = from; i < to; ++i)
+                lines[i] = function.apply(lines[i]);
+        });
+    }
+
+    /**
+     * LineProcessor class constructor, for functions handling a range of
+     * lines at a time. Ranges hold at most a few hundred lines.
+     * @param pool fork-join pool to run on.
+     * @param chunkSize number of lines read and processed at a time.
+     * @param function replaces lines with their results. Called from many threads at once.
+     */
+    public LineProcessor(ForkJoinPool pool, int chunkSize, RangeFunction function) {
+        if (chunkSize < 1)
+            throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+
+        this.pool = pool;
+        this.chunkSize = chunkSize;
+        this.function = function;
+    }
+
+    /**
+     * Processes the whole input.
+     * @param in input lines.
+     * @param out output, one line per input line, in the same order.
+     * @return number of processed lines.
+     * @throws IOException when reading or writing fails.
+     */
+    public long process(BufferedReader in, Writer out) throws IOException {
+        String[] current = new String[chunkSize];
+        String[] next = new String[chunkSize];
+        long total = 0;
+
+        int count = read(in, current);
+        while (count > 0) {
+            ForkJoinTask<Void> task = pool.submit(new Chunk(current, 0, count));
+
+            /* Read the next chunk while this one is being processed. */
+            int nextCount = read(in, next);
+
+            task.join();
+            for (int i = 0; i < count; ++i) {
+                out.write(current[i]);
+                out.write('\n');
+                current[i] = null;
+            }
+            total += count;
+
+            String[] swap = current;
+            current = next;
+            next = swap;
+            count = nextCount;
+        }
+
+        out.flush();
+        return total;
+    }
+
+    /**
+     * Reads up to buffer.length lines.
+     * @return number of lines read.
+     */
+    private int read(BufferedReader in, String[] buffer) throws IOException {
+        int count = 0;
+        String line;
+        while (count < buffer.length && (line = in.readLine()) != null)
+            buffer[count++] = line;
+        return count;
+    }
+
+    /**
+     * Fork-join task replacing the lines of a chunk range with their results.
+     */
+    private class Chunk extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private String[] lines;
+        private int from, to;
+
+        Chunk(String[] lines, int from, int to) {
+            this.lines = lines;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= SPLIT_THRESHOLD) {
+                function.apply(lines, from, to);
+                return;
+            }
+
+            int middle = (from + to) >>> 1;
+            invokeAll(new Chunk(lines, from, middle), new Chunk(lines, middle, to));
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package KSudoku;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency metrics of the engine and the UI.
+ * Each metric is a lock-free, allocation-free LatencyHistogram, whose
+ * count is the number of recorded events. The histograms can be published
+ * as JMX MBeans named "KSudoku:type=Latency,name=..." and dumped to the
+ * standard error stream periodically.
+ */
+public class Metrics {
+    /** Puzzle acquisition in Model.getNewSolution. */
+    public static final LatencyHistogram NEW_SOLUTION = new LatencyHistogram();
+    /** Check correctness runs, without the message shown afterwards. */
+    public static final LatencyHistogram CHECK = new LatencyHistogram();
+    /** Per-keystroke board update and highlighting. */
+    public static final LatencyHistogram KEYSTROKE = new LatencyHistogram();
+    /** Time an event waits in the EDT queue, sampled by a probe. */
+    public static final LatencyHistogram EDT_DELAY = new LatencyHistogram();
+
+    private static final Map<String, LatencyHistogram> ALL = new LinkedHashMap<>();
+    private static ScheduledExecutorService scheduler;      /* runs the EDT probe and the log dump */
+
+    static {
+        ALL.put("newSolution", NEW_SOLUTION);
+        ALL.put("check", CHECK);
+        ALL.put("keystroke", KEYSTROKE);
+        ALL.put("edtDelay", EDT_DELAY);
+    }
+
+    private Metrics() {}
+
+    /**
+     * Publishes all histograms as MBeans on the platform MBean server.
+     * Starts the EDT delay probe for the GUI, and the periodic log dump when
+     * the ksudoku.metrics.logSeconds system property is positive.
+     * Does nothing when called again.
+     * @param eventQueue posts events to the GUI's event thread, e.g.
+     *                   SwingUtilities::invokeLater, null when no GUI runs.
+     */
+    public static synchronized void install(Executor eventQueue) {
+        if (scheduler != null)
+            return;
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "KSudoku metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        for (Map.Entry<String, LatencyHistogram> entry : ALL.entrySet())
+            publish(entry.getKey(), entry.getValue());
+
+        if (eventQueue != null)
+            scheduler.scheduleAtFixedRate(() -> probeEdt(eventQueue), 100, 100, TimeUnit.MILLISECONDS);
+
+        long logSeconds = Long.getLong("ksudoku.metrics.logSeconds", 0);
+        if (logSeconds > 0)
+            scheduler.scheduleAtFixedRate(() -> System.err.print(dump()), logSeconds, logSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Adds a histogram, e.g. of an HTTP endpoint, to the published ones.
+     * @param name metric name, unique among the metrics.
+     * @param histogram the histogram.
+     */
+    public static synchronized void register(String name, LatencyHistogram histogram) {
+        ALL.put(name, histogram);
+        if (scheduler != null)
+            publish(name, histogram);
+    }
+
+    /**
+     * Registers a histogram as an MBean.
+     */
+    private static void publish(String name, LatencyHistogram histogram) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.registerMBean(histogram, new ObjectName("KSudoku:type=Latency,name=" + name));
+        } catch (JMException e) {
+            System.err.println("Cannot register the " + name + " metric: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Posts an event to the EDT that records how long it waited in the queue.
+     */
+    private static void probeEdt(Executor eventQueue) {
+        long posted = System.nanoTime();
+        eventQueue.execute(() -> EDT_DELAY.record(System.nanoTime() - posted));
+    }
+
+    /**
+     * Returns one line per histogram, e.g. for a log.
+     * @return the metrics text.
+     */
+    public static synchronized String dump() {
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<String, LatencyHistogram> entry : ALL.entrySet())
+            text.append("KSudoku ").append(entry.getKey()).append(": ").append(entry.getValue()).append('\n');
+        return text.toString();
+    }
+}
@@ -1,141 +1,319 @@
 package KSudoku;
 
-import java.util.*;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * Model class of the MVC pattern in KSudoku.
- * Stores all solutions, corresponding mask arrays.
- * Contains package methods to take a new solution and mask array.
+ * Generates new puzzles and keeps the one currently on the table.
+ * Contains package methods to take a new solution and mask array for
+ * the Swing UI, and public ones for any other host. Model does not depend
+ * on AWT or Swing.
+ * A Model is thread safe and may be shared, e.g. by the requests of
+ * the HTTP service: engines are taken from pools for each call and
+ * random numbers come from ThreadLocalRandom.
  */
 public class Model {
-    private final int SOLUTIONS_COUNT = 3;  /* constant number of available solutions */
-    private char[][][] solutionsArray;      /* three 9x9 tables, stored solutions */
-    private boolean[][][] visibilityArray;  /* which digits are initially seen in a solution */
-    private int currentSolutionNumber;      /* which solution is currently on the table */
+    static final int MAX_DIFFICULTY_ATTEMPTS = 4096;   /* puzzles tried to find one of a given difficulty */
 
-    private Random rand;                    /* random numbers generator */
+    private volatile Puzzle currentPuzzle;  /* the puzzle currently on the table */
+    private final Geometry geometry;        /* shape of the boards played */
+
+    private final EnginePool<Solver> solvers;           /* constraint propagation solvers */
+    private final EnginePool<Rater> raters;             /* shared human techniques solvers, give hints */
+    private final EnginePool<Generator> generators;     /* puzzle generators, used when the pool is empty */
+    private final SolutionCounter counter;  /* parallel solution counter */
+    private final PuzzlePool pool;          /* puzzles generated in the background */
+    private final PuzzleCorpus corpus;      /* puzzles read from a corpus file, null when generating */
+    private final Symmetry symmetry;        /* varies corpus puzzles */
 
     /**
-     * Model class default constructor.
-     * Initializes solutions array and array of mask arrays.
-     * Randomly chooses current solution.
+     * Model class default constructor, for classic 9x9 boards.
      */
     public Model() {
-        rand = new Random();
-        currentSolutionNumber = rand.nextInt(SOLUTIONS_COUNT);
-
-        solutionsArray = new char[][][]{
-                {
-                        {'7', '1', '4', '3', '9', '5', '2', '6', '8'},
-                        {'8', '6', '9', '2', '7', '4', '1', '3', '5'},
-                        {'5', '2', '3', '1', '6', '8', '7', '4', '9'},
-                        {'4', '7', '6', '3', '5', '2', '9', '8', '1'},
-                        {'2', '9', '1', '6', '8', '7', '3', '5', '4'},
-                        {'3', '5', '8', '4', '9', '1', '6', '2', '7'},
-                        {'1', '3', '5', '8', '2', '9', '4', '7', '6'},
-                        {'6', '4', '7', '5', '1', '3', '8', '9', '2'},
-                        {'9', '8', '2', '7', '4', '6', '5', '1', '3'}
-                },
-                {
-                        {'9', '6', '1', '2', '5', '7', '8', '3', '4'},
-                        {'3', '5', '4', '1', '9', '8', '7', '6', '2'},
-                        {'8', '7', '2', '4', '6', '3', '5', '1', '9'},
-                        {'2', '9', '3', '7', '4', '5', '1', '8', '6'},
-                        {'4', '8', '6', '9', '3', '1', '2', '7', '5'},
-                        {'7', '1', '5', '6', '8', '2', '9', '4', '3'},
-                        {'5', '2', '7', '3', '1', '6', '4', '9', '8'},
-                        {'6', '4', '8', '5', '7', '9', '3', '2', '1'},
-                        {'1', '3', '9', '8', '2', '4', '6', '5', '7'}
-                },
-                {
-                        {'1', '2', '3', '9', '5', '8', '6', '4', '7'},
-                        {'9', '6', '4', '1', '3', '7', '5', '8', '2'},
-                        {'8', '5', '7', '6', '4', '2', '1', '3', '9'},
-                        {'5', '9', '8', '3', '6', '1', '2', '7', '4'},
-                        {'2', '4', '1', '7', '9', '5', '8', '6', '3'},
-                        {'7', '3', '6', '8', '2', '4', '9', '5', '1'},
-                        {'4', '7', '2', '5', '8', '9', '3', '1', '6'},
-                        {'3', '1', '5', '2', '7', '6', '4', '9', '8'},
-                        {'6', '8', '9', '4', '1', '3', '7', '2', '5'}
-                }
-        };
-
-        visibilityArray = new boolean[][][]{
-                {
-                        {false, false, true, false, true, false, true, true, true},
-                        {false, false, false, false, false, false, false, true, false},
-                        {true, true, false, false, true, false, true, true, false},
-                        {false, false, false, false, false, false, true, true, true},
-                        {false, false, false, true, true, true, false, false, false},
-                        {false, false, false, true, false, false, true, true, true},
-                        {false, true, true, true, true, false, false, false, true},
-                        {false, true, true, false, false, true, false, false, false},
-                        {false, true, true, false, false, false, true, true, true}
-                },
-                {
-                        {false, true, true, true, false, true, true, false, false},
-                        {true, true, true, true, true, true, true, true, true},
-                        {true, true, false, true, true, true, false, false, false},
-                        {true, false, true, false, true, true, true, false, false},
-                        {true, true, true, true, true, true, false, true, true},
-                        {true, true, false, false, true, false, true, true, false},
-                        {true, false, true, false, true, false, true, true, false},
-                        {false, false, false, false, false, false, true, false, false},
-                        {true, false, false, true, true, true, false, false, false}
-                },
-                {
-                        {false, false, false, true, false, true, false, true, false},
-                        {true, false, false, true, false, false, true, false, false},
-                        {false, false, false, true, true, false, false, true, true},
-                        {true, true, true, true, false, true, true, false, false},
-                        {false, false, true, false, true, true, true, true, true},
-                        {true, false, true, false, false, true, false, true, true},
-                        {false, true, true, false, false, false, false, true, false},
-                        {true, true, false, false, false, false, false, true, true},
-                        {true, true, false, false, false, false, false, true, true}
-                }
-        };
-    }
-
-    /**
-     * Sets random solution as the current solution and returns corresponding table.
-     * @return table of digits for the corresponding solution number.
+        this(Geometry.CLASSIC);
+    }
+
+    /**
+     * Model class constructor.
+     * Creates the solver and the puzzle generator, and starts the puzzle pool.
+     * Pool depth and refill threshold are read from the ksudoku.pool.depth
+     * and ksudoku.pool.refill system properties, the number of search tree
+     * levels the solution counter splits into parallel tasks from the
+     * ksudoku.count.splitDepth property.
+     * @param geometry shape of the boards to play.
+     */
+    public Model(Geometry geometry) {
+        this.geometry = geometry;
+        solvers = new EnginePool<>(() -> new Solver(geometry));
+        raters = Rater.pool(geometry);
+        counter = newCounter(geometry);
+        generators = new EnginePool<>(() -> {
+            /* The player waits for these, so they may use all cores. */
+            Generator generator = new Generator(geometry, new Random());
+            if (geometry == Geometry.CLASSIC)
+                generator.setSolutionCounter(counter);
+            return generator;
+        });
+        pool = new PuzzlePool(geometry, Integer.getInteger("ksudoku.pool.depth", 8),
+                Integer.getInteger("ksudoku.pool.refill", 2));
+        corpus = null;
+        symmetry = null;
+    }
+
+    /**
+     * Model class constructor for playing puzzles from a corpus file.
+     * No puzzles are generated, each new game is a random corpus record
+     * under a random symmetry, so the same record rarely shows twice.
+     * @param corpusPath path of a corpus file.
+     * @throws IOException when the corpus cannot be opened.
+     */
+    public Model(Path corpusPath) throws IOException {
+        geometry = Geometry.CLASSIC;
+        solvers = new EnginePool<>(Solver::new);
+        raters = Rater.pool(geometry);
+        counter = newCounter(geometry);
+        generators = null;
+        pool = null;
+        corpus = PuzzleCorpus.open(corpusPath);
+        symmetry = new Symmetry(geometry);
+        if (corpus.size() == 0)
+            throw new IOException(corpusPath + " contains no puzzles");
+    }
+
+    /**
+     * Takes a new puzzle, sets it as the current one and returns its solution.
+     * The puzzle is a transformed random corpus record when playing from a corpus.
+     * Otherwise it comes from the pool, and is generated on the spot only
+     * when the pool is empty.
+     * @return table of digits for the new solution.
      */
     char[][] getNewSolution() {
+        return getNewSolution(Deadline.NONE);
+    }
 
-        /* Choose randomly which array to return. *
-         * Make sure it's not the same as the previous one. */
-        int oldSolutionNumber = currentSolutionNumber;
-        do
-            currentSolutionNumber = rand.nextInt(SOLUTIONS_COUNT);
-        while
-        (currentSolutionNumber == oldSolutionNumber);
+    /**
+     * Takes a new puzzle within a deadline, sets it as the current one and
+     * returns its solution. A puzzle generated on the spot may have more
+     * givens when the time runs out.
+     * @param deadline time limit or cancellation token of the call.
+     * @return table of digits for the new solution, or null when no puzzle
+     *         could be made in time; the current puzzle is then kept.
+     */
+    char[][] getNewSolution(Deadline deadline) {
+        long start = System.nanoTime();
+        Puzzle puzzle = newPuzzle(deadline);
+        if (puzzle == null)
+            return null;
+        currentPuzzle = puzzle;
+        char[][] table = puzzle.getSolutionTable();
+        Metrics.NEW_SOLUTION.record(System.nanoTime() - start);
+        return table;
+    }
 
-        /* Create an empty 9x9 char array and fill it with a solution
-         * the currentSolutionNumber corresponds to. */
-        char[][] result = new char[9][9];
+    /**
+     * Sets a puzzle, e.g. of a saved game, as the current one and returns its solution.
+     * @param puzzle the puzzle to play, of this Model's geometry.
+     * @return table of digits for the solution.
+     */
+    char[][] resume(Puzzle puzzle) {
+        currentPuzzle = puzzle;
+        return puzzle.getSolutionTable();
+    }
 
-        for (int i = 0; i < 9; ++i)
-            for (int j = 0; j < 9; ++j)
-                result[i][j] = solutionsArray[currentSolutionNumber][i][j];
+    /**
+     * Takes a new puzzle without touching the current one.
+     * The puzzle is a transformed random corpus record when playing from a corpus.
+     * Otherwise it comes from the pool, and is generated on the spot only
+     * when the pool is empty.
+     * @return the puzzle.
+     */
+    public Puzzle newPuzzle() {
+        return newPuzzle(Deadline.NONE);
+    }
 
-        /* Return the array. */
-        return result;
+    /**
+     * Takes a new puzzle within a deadline without touching the current one.
+     * A puzzle generated on the spot may have more givens when the time runs out.
+     * @param deadline time limit or cancellation token of the call.
+     * @return the puzzle, or null if none could be made in time.
+     */
+    public Puzzle newPuzzle(Deadline deadline) {
+        if (corpus != null)
+            return randomCorpusPuzzle();
+
+        Puzzle puzzle = pool.poll();
+        return puzzle != null ? puzzle : generate(deadline);
+    }
+
+    /**
+     * Takes a new puzzle of a given difficulty without touching the current one.
+     * Puzzles are drawn from the corpus or generated, not taken from the pool,
+     * until one has the difficulty, at most MAX_DIFFICULTY_ATTEMPTS times.
+     * @param difficulty wanted difficulty.
+     * @return the puzzle, or null if none of the attempts had the difficulty.
+     */
+    public Puzzle newPuzzle(Difficulty difficulty) {
+        return newPuzzle(difficulty, Deadline.NONE);
+    }
+
+    /**
+     * Takes a new puzzle of a given difficulty within a deadline, as
+     * newPuzzle(difficulty) does, stopping the attempts when the time is up.
+     * @param difficulty wanted difficulty.
+     * @param deadline time limit or cancellation token of the call.
+     * @return the puzzle, or null if none of the attempts made in time had the difficulty.
+     */
+    public Puzzle newPuzzle(Difficulty difficulty, Deadline deadline) {
+        for (int attempt = 0; attempt < MAX_DIFFICULTY_ATTEMPTS && !deadline.poll(); ++attempt) {
+            Puzzle puzzle = corpus != null ? randomCorpusPuzzle() : generate(deadline);
+            if (puzzle != null && puzzle.getDifficulty() == difficulty)
+                return puzzle;
+        }
+        return null;
+    }
+
+    /**
+     * Takes a random corpus record under a random symmetry. The corpus
+     * holds one record per class of equivalent puzzles, the symmetries
+     * bring the other members of the class back.
+     */
+    private Puzzle randomCorpusPuzzle() {
+        Random rand = ThreadLocalRandom.current();
+        return symmetry.apply(corpus.random(rand), rand);
+    }
+
+    /**
+     * Counts solutions of a grid up to a limit, splitting the search
+     * across the common fork-join pool.
+     * @param grid cell values in row-major order, 0 for an empty cell. Not modified.
+     * @param limit maximum number of solutions to look for: 1 to check
+     *              solvability, 2 to check uniqueness, or more.
+     * @return number of solutions found, never more than limit.
+     */
+    public int countSolutions(int[] grid, int limit) {
+        return counter.count(grid, limit);
+    }
+
+    /**
+     * Counts solutions of a grid up to a limit within a deadline.
+     * @param grid cell values in row-major order, 0 for an empty cell. Not modified.
+     * @param limit maximum number of solutions to look for.
+     * @param deadline time limit or cancellation token of the count; when
+     *                 it interrupts the count, the result is a lower bound.
+     * @return number of solutions found, never more than limit.
+     */
+    public int countSolutions(int[] grid, int limit, Deadline deadline) {
+        return counter.count(grid, limit, deadline);
+    }
+
+    private static SolutionCounter newCounter(Geometry geometry) {
+        return new SolutionCounter(geometry, ForkJoinPool.commonPool(),
+                Integer.getInteger("ksudoku.count.splitDepth", 2));
+    }
+
+    /**
+     * Generates a puzzle on a pooled generator.
+     */
+    private Puzzle generate(Deadline deadline) {
+        Generator generator = generators.take();
+        try {
+            return generator.generate(deadline);
+        } finally {
+            generators.give(generator);
+        }
+    }
+
+    /**
+     * Returns the shape of the boards played.
+     * @return the geometry.
+     */
+    public Geometry getGeometry() {
+        return geometry;
     }
 
     /**
-     * Returns 9x9 boolean array that indicates which digits of the solution
+     * Returns the puzzle currently on the table.
+     * @return the current puzzle, null before the first game.
+     */
+    public Puzzle getCurrentPuzzle() {
+        return currentPuzzle;
+    }
+
+    /**
+     * Returns the background puzzle pool, e.g. to read its statistics.
+     * @return the puzzle pool, null when playing from a corpus.
+     */
+    PuzzlePool getPool() {
+        return pool;
+    }
+
+    /**
+     * Returns N x N boolean array that indicates which digits of the solution
      * are shown to the player.
      * @return boolean array of masks.
      */
     boolean[][] getVisibilityArray() {
-        boolean[][] result = new boolean[9][9];
+        return currentPuzzle.getVisibilityTable();
+    }
+
+    /**
+     * Finds the next logical deduction on the board of the current puzzle.
+     * @param board the board being played.
+     * @return the hint, or null when the board is solved.
+     */
+    public Hint getHint(BoardState board) {
+        return getHint(board, Deadline.NONE);
+    }
+
+    /**
+     * Finds the next logical deduction on the board of the current puzzle
+     * within a deadline; when the time is up first, a digit of the solution
+     * is revealed where the deductions so far leave the fewest candidates.
+     * @param board the board being played.
+     * @param deadline time limit or cancellation token of the call.
+     * @return the hint, or null when the board is solved.
+     */
+    public Hint getHint(BoardState board, Deadline deadline) {
+        Rater rater = raters.take();
+        try {
+            return rater.hint(board, currentPuzzle, deadline);
+        } finally {
+            raters.give(rater);
+        }
+    }
+
+    /**
+     * Solves a partially filled table.
+     * @param table N x N table of digit symbols, any other character is an empty field.
+     * @return solved table, or null if the table has no solution.
+     */
+    char[][] solve(char[][] table) {
+        int size = geometry.size;
+        int[] grid = new int[geometry.cells];
+
+        for (int i = 0; i < size; ++i)
+            for (int j = 0; j < size; ++j)
+                grid[i * size + j] = Math.max(geometry.digitOf(table[i][j]), 0);
+
+        Solver solver = solvers.take();
+        boolean solved;
+        try {
+            solved = solver.solve(grid);
+        } finally {
+            solvers.give(solver);
+        }
+        if (!solved)
+            return null;
 
-        for (int i = 0; i < 9; ++i)
-            for (int j = 0; j < 9; ++j)
-                result[i][j] = visibilityArray[currentSolutionNumber][i][j];
+        char[][] result = new char[size][size];
+        for (int i = 0; i < size; ++i)
+            for (int j = 0; j < size; ++j)
+                result[i][j] = geometry.symbol(grid[i * size + j]);
 
-        /* return the array */
         return result;
     }
-}
\ No newline at end of file
+}
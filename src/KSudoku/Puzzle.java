@@ -0,0 +1,190 @@
+package KSudoku;
+
+/**
+ * A single sudoku game: a complete solution and the mask of digits
+ * that are shown to the player at the start.
+ * Puzzles are immutable. The difficulty rating is computed on first
+ * use and cached with the puzzle.
+ */
+public class Puzzle {
+    private final Geometry geometry;    /* board shape */
+    private final byte[] solution;      /* digits in row-major order */
+    private final long[] givens;        /* bit c is set when cell c is initially visible */
+    private volatile Technique rating;  /* hardest technique needed, null until first asked for */
+
+    /**
+     * Puzzle class constructor.
+     * @param geometry board shape.
+     * @param solution digits of the complete grid in row-major order.
+     * @param givens bitset of initially visible cells.
+     */
+    Puzzle(Geometry geometry, byte[] solution, long[] givens) {
+        this(geometry, solution, givens, null);
+    }
+
+    /**
+     * Puzzle class constructor, for a puzzle whose rating is already known,
+     * e.g. a transformation of a rated one.
+     * @param geometry board shape.
+     * @param solution digits of the complete grid in row-major order.
+     * @param givens bitset of initially visible cells.
+     * @param rating hardest technique needed, null if not known.
+     */
+    Puzzle(Geometry geometry, byte[] solution, long[] givens, Technique rating) {
+        this.geometry = geometry;
+        this.solution = solution;
+        this.givens = givens;
+        this.rating = rating;
+    }
+
+    /**
+     * Creates a puzzle from solver grids.
+     * @param geometry board shape.
+     * @param solved digits of the complete grid.
+     * @param puzzle the same grid with hidden cells set to 0.
+     * @return the puzzle.
+     */
+    static Puzzle fromGrids(Geometry geometry, int[] solved, int[] puzzle) {
+        byte[] solution = new byte[geometry.cells];
+        long[] givens = new long[(geometry.cells + 63) >>> 6];
+
+        for (int cell = 0; cell < geometry.cells; ++cell) {
+            solution[cell] = (byte) solved[cell];
+            if (puzzle[cell] != 0)
+                givens[cell >>> 6] |= 1L << cell;
+        }
+        return new Puzzle(geometry, solution, givens);
+    }
+
+    /**
+     * Creates a classic 9x9 puzzle from solver grids.
+     * @param solved 81 digits of the complete grid.
+     * @param puzzle the same grid with hidden cells set to 0.
+     * @return the puzzle.
+     */
+    static Puzzle fromGrids(int[] solved, int[] puzzle) {
+        return fromGrids(Geometry.CLASSIC, solved, puzzle);
+    }
+
+    /**
+     * Returns the board shape of this puzzle.
+     * @return the geometry.
+     */
+    public Geometry getGeometry() {
+        return geometry;
+    }
+
+    /**
+     * Returns the solution digit of a cell.
+     * @param cell cell index in row-major order.
+     * @return digit from 1 to N.
+     */
+    public int get(int cell) {
+        return solution[cell];
+    }
+
+    /**
+     * Tells whether a cell is shown to the player at the start.
+     * @param cell cell index in row-major order.
+     * @return true if the cell is a given.
+     */
+    public boolean isGiven(int cell) {
+        return (givens[cell >>> 6] & (1L << cell)) != 0;
+    }
+
+    /**
+     * Returns the number of initially visible cells.
+     * @return number of givens.
+     */
+    public int givensCount() {
+        int count = 0;
+        for (long word : givens)
+            count += Long.bitCount(word);
+        return count;
+    }
+
+    /**
+     * Returns an identifier of this puzzle: a 64-bit FNV-1a hash of its
+     * solution and givens, e.g. to tell saved games apart.
+     * @return the puzzle id.
+     */
+    public long getId() {
+        long hash = 0xCBF29CE484222325L;
+        for (byte digit : solution)
+            hash = (hash ^ digit) * 0x100000001B3L;
+        for (long word : givens)
+            for (int shift = 0; shift < 64; shift += 8)
+                hash = (hash ^ ((word >>> shift) & 0xFF)) * 0x100000001B3L;
+        return hash;
+    }
+
+    /**
+     * Returns the hardest solving technique this puzzle needs.
+     * Computed on the first call and cached.
+     * @return the rating.
+     */
+    public Technique getRating() {
+        Technique result = rating;
+        if (result == null)
+            rating = result = Rater.rateShared(this);
+        return result;
+    }
+
+    /**
+     * Returns the rating if it was computed, without computing it.
+     * @return the rating, or null.
+     */
+    Technique getCachedRating() {
+        return rating;
+    }
+
+    /**
+     * Returns the difficulty level of this puzzle.
+     * @return the difficulty, following from the rating.
+     */
+    public Difficulty getDifficulty() {
+        return getRating().getDifficulty();
+    }
+
+    /**
+     * Returns the puzzle as the player sees it at the start.
+     * @return cell values, 0 for hidden cells.
+     */
+    public int[] toGrid() {
+        int[] grid = new int[geometry.cells];
+        for (int cell = 0; cell < geometry.cells; ++cell)
+            if (isGiven(cell))
+                grid[cell] = solution[cell];
+        return grid;
+    }
+
+    /**
+     * Returns the solution as an NxN table of digit symbols.
+     * @return table of digits.
+     */
+    char[][] getSolutionTable() {
+        int n = geometry.size;
+        char[][] result = new char[n][n];
+
+        for (int i = 0; i < n; ++i)
+            for (int j = 0; j < n; ++j)
+                result[i][j] = geometry.symbol(solution[i * n + j]);
+
+        return result;
+    }
+
+    /**
+     * Returns the NxN table telling which digits are shown to the player.
+     * @return boolean array of masks.
+     */
+    boolean[][] getVisibilityTable() {
+        int n = geometry.size;
+        boolean[][] result = new boolean[n][n];
+
+        for (int i = 0; i < n; ++i)
+            for (int j = 0; j < n; ++j)
+                result[i][j] = isGiven(i * n + j);
+
+        return result;
+    }
+}
@@ -0,0 +1,260 @@
+package KSudoku;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.IntStream;
+
+/**
+ * Read-only puzzle corpus file, memory-mapped.
+ * The file starts with a 16 byte header: the "KSDC" magic, format version,
+ * record size and record count. Then come fixed-size 52 byte records:
+ * 41 bytes of solution digits packed two per byte (high nibble first),
+ * followed by 11 bytes of the givens bitmask (81 bits, least significant
+ * bit of the first byte is cell 0). Record n is found in O(1) and only
+ * the pages that are actually read get loaded.
+ * Corpora hold classic 9x9 puzzles only.
+ */
+public class PuzzleCorpus implements Closeable {
+    static final int MAGIC = 0x4B534443;                /* "KSDC" */
+    static final short VERSION = 1;                     /* current format version */
+    static final int HEADER_SIZE = 16;                  /* magic, version, record size, record count */
+    static final int CELLS = Geometry.CLASSIC.cells;    /* 81 */
+    static final int SOLUTION_BYTES = (CELLS + 1) / 2;  /* 41 */
+    static final int GIVENS_BYTES = (CELLS + 7) / 8;    /* 11 */
+    static final int RECORD_SIZE = SOLUTION_BYTES + GIVENS_BYTES;   /* 52 */
+
+    private static final int RECORDS_PER_SEGMENT = 1 << 24;     /* keeps every mapping below 2 GB */
+
+    private FileChannel channel;            /* the open corpus file */
+    private MappedByteBuffer[] segments;    /* the records, mapped in segments */
+    private long count;                     /* number of records */
+
+    private PuzzleCorpus(FileChannel channel, MappedByteBuffer[] segments, long count) {
+        this.channel = channel;
+        this.segments = segments;
+        this.count = count;
+    }
+
+    /**
+     * Opens and maps a corpus file.
+     * @param path corpus file path.
+     * @return the opened corpus.
+     * @throws IOException when the file cannot be read or is not a corpus.
+     */
+    public static PuzzleCorpus open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining() && channel.read(header) >= 0) {}
+            header.flip();
+
+            if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC)
+                throw new IOException(path + " is not a KSudoku corpus");
+            if (header.getShort() != VERSION || header.getShort() != RECORD_SIZE)
+                throw new IOException(path + " has an unsupported corpus version");
+
+            long count = header.getLong();
+            if (count < 0 || HEADER_SIZE + count * RECORD_SIZE > channel.size())
+                throw new IOException(path + " is truncated");
+
+            int segmentCount = (int) ((count + RECORDS_PER_SEGMENT - 1) / RECORDS_PER_SEGMENT);
+            MappedByteBuffer[] segments = new MappedByteBuffer[segmentCount];
+            for (int s = 0; s < segmentCount; ++s) {
+                long first = (long) s * RECORDS_PER_SEGMENT;
+                long records = Math.min(RECORDS_PER_SEGMENT, count - first);
+                segments[s] = channel.map(FileChannel.MapMode.READ_ONLY,
+                        HEADER_SIZE + first * RECORD_SIZE, records * RECORD_SIZE);
+            }
+
+            return new PuzzleCorpus(channel, segments, count);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the number of puzzles in the corpus.
+     * @return puzzles count.
+     */
+    public long size() {
+        return count;
+    }
+
+    /**
+     * Reads a puzzle.
+     * @param index record number, from 0 to size() - 1.
+     * @return the puzzle.
+     */
+    public Puzzle get(long index) {
+        if (index < 0 || index >= count)
+            throw new IndexOutOfBoundsException("Record " + index + " of " + count);
+
+        ByteBuffer segment = segments[(int) (index / RECORDS_PER_SEGMENT)];
+        int offset = (int) (index % RECORDS_PER_SEGMENT) * RECORD_SIZE;
+
+        byte[] solution = new byte[CELLS];
+        for (int i = 0; i < SOLUTION_BYTES; ++i) {
+            int packed = segment.get(offset + i);
+            solution[2 * i] = (byte) ((packed >>> 4) & 0xF);
+            if (2 * i + 1 < CELLS)
+                solution[2 * i + 1] = (byte) (packed & 0xF);
+        }
+
+        long[] givens = new long[2];
+        for (int i = 0; i < GIVENS_BYTES; ++i)
+            givens[i >>> 3] |= (segment.get(offset + SOLUTION_BYTES + i) & 0xFFL) << ((i & 7) * 8);
+
+        return new Puzzle(Geometry.CLASSIC, solution, givens);
+    }
+
+    /**
+     * Reads a random puzzle.
+     * @param rand random numbers generator.
+     * @return the puzzle.
+     */
+    public Puzzle random(Random rand) {
+        return get(Math.floorMod(rand.nextLong(), count));
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Packs a puzzle into a record.
+     * @param puzzle puzzle to pack.
+     * @param out buffer with at least RECORD_SIZE bytes remaining.
+     */
+    static void encode(Puzzle puzzle, ByteBuffer out) {
+        for (int i = 0; i < SOLUTION_BYTES; ++i) {
+            int high = puzzle.get(2 * i);
+            int low = 2 * i + 1 < CELLS ? puzzle.get(2 * i + 1) : 0;
+            out.put((byte) ((high << 4) | low));
+        }
+
+        for (int i = 0; i < GIVENS_BYTES; ++i) {
+            int bits = 0;
+            for (int b = 0; b < 8 && i * 8 + b < CELLS; ++b)
+                if (puzzle.isGiven(i * 8 + b))
+                    bits |= 1 << b;
+            out.put((byte) bits);
+        }
+    }
+
+    /**
+     * Generates a new corpus file, using all cores.
+     * Puzzles equivalent under the sudoku symmetries are rejected.
+     * @param path corpus file path, overwritten if it exists.
+     * @param count number of puzzles to generate, at most DedupIndex.MAX_ENTRIES.
+     * @throws IOException when writing fails.
+     */
+    public static void build(Path path, long count) throws IOException {
+        if (count > DedupIndex.MAX_ENTRIES)
+            throw new IllegalArgumentException("At most " + DedupIndex.MAX_ENTRIES + " puzzles can be deduplicated: " + count);
+
+        final int batch = 4096;
+        ThreadLocal<Generator> generators = ThreadLocal.withInitial(() -> new Generator(ThreadLocalRandom.current()));
+        DedupIndex index = new DedupIndex(1 << 16);
+        Canonicalizer canonicalizer = new Canonicalizer();
+        Generator replacements = new Generator(new Random());
+        replacements.setDedupIndex(index);
+        Puzzle[] puzzles = new Puzzle[batch];
+        ByteBuffer buffer = ByteBuffer.allocate(batch * RECORD_SIZE);
+
+        try (FileChannel out = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putShort(VERSION).putShort((short) RECORD_SIZE).putLong(count).flip();
+            writeFully(out, header);
+
+            for (long done = 0; done < count; ) {
+                int n = (int) Math.min(batch, count - done);
+                IntStream.range(0, n).parallel().forEach(i -> puzzles[i] = generators.get().generate());
+
+                /* Duplicates are replaced on this thread, checking against the index. */
+                buffer.clear();
+                for (int i = 0; i < n; ++i) {
+                    Puzzle puzzle = puzzles[i];
+                    if (!index.add(canonicalizer.fingerprint(puzzle)))
+                        puzzle = replacements.generate();
+                    encode(puzzle, buffer);
+                }
+                buffer.flip();
+                writeFully(out, buffer);
+                done += n;
+            }
+        }
+    }
+
+    /**
+     * Imports puzzles from text lines into a new corpus file.
+     * Each line holds 81 characters, '.' or '0' for an empty cell. Lines that
+     * are malformed or of another board size, have no unique solution, or are equivalent to an already
+     * imported puzzle are skipped.
+     * @param in puzzle lines.
+     * @param path corpus file path, overwritten if it exists.
+     * @return number of imported puzzles.
+     * @throws IOException when reading or writing fails.
+     */
+    public static long importPuzzles(BufferedReader in, Path path) throws IOException {
+        Solver solver = new Solver();
+        Canonicalizer canonicalizer = new Canonicalizer();
+        DedupIndex index = new DedupIndex(1 << 16);
+        ByteBuffer buffer = ByteBuffer.allocate(4096 * RECORD_SIZE);
+        long count = 0;
+
+        try (FileChannel out = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putShort(VERSION).putShort((short) RECORD_SIZE).putLong(0).flip();
+            writeFully(out, header);
+
+            String line;
+            while ((line = in.readLine()) != null) {
+                int[] puzzle = BatchSolver.parse(line.trim());
+                if (puzzle == null || puzzle.length != CELLS || solver.countSolutions(puzzle, 2) != 1)
+                    continue;
+
+                int[] solved = puzzle.clone();
+                solver.solve(solved);
+                Puzzle imported = Puzzle.fromGrids(solved, puzzle);
+                if (!index.add(canonicalizer.fingerprint(imported)))
+                    continue;
+
+                if (buffer.remaining() < RECORD_SIZE) {
+                    buffer.flip();
+                    writeFully(out, buffer);
+                    buffer.clear();
+                }
+                encode(imported, buffer);
+                ++count;
+            }
+            buffer.flip();
+            writeFully(out, buffer);
+
+            /* Now the count is known, put it to the header. */
+            header.clear();
+            header.putLong(count).flip();
+            out.position(8);
+            writeFully(out, header);
+        }
+        return count;
+    }
+
+    private static void writeFully(FileChannel out, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining())
+            out.write(buffer);
+    }
+}
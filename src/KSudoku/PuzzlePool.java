@@ -0,0 +1,197 @@
+package KSudoku;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Pool of pre-generated puzzles.
+ * A daemon worker thread keeps a bounded lock-free ring of ready puzzles
+ * filled up to the configured depth, and sleeps until the number of
+ * ready puzzles drops to the refill threshold. Taking a puzzle never
+ * blocks: when the ring is empty the caller gets null and counts a miss.
+ * The ring has a single producer (the worker) and any number of consumers.
+ */
+public class PuzzlePool {
+    private final AtomicReferenceArray<Puzzle> ring;    /* ready puzzles, power of two length */
+    private final int mask;                             /* ring length - 1 */
+    private final AtomicLong head;                      /* next slot to take from */
+    private final AtomicLong tail;                      /* next slot to put to, written by the worker only */
+    private final int depth;                            /* how many puzzles the worker keeps ready */
+    private final int refillThreshold;                  /* worker is woken when this few are left */
+    private final Geometry geometry;                    /* shape of the generated puzzles */
+
+    private final AtomicLong hits;                      /* takes served from the ring */
+    private final AtomicLong misses;                    /* takes that found the ring empty */
+    private final AtomicLong refills;                   /* puzzles generated by the worker */
+    private final AtomicLong refillNanos;               /* total time spent generating them */
+    private final AtomicLong maxRefillNanos;            /* longest single generation */
+
+    private final Thread worker;                        /* the producer thread */
+    private volatile boolean running;                   /* cleared by shutdown() */
+
+    /**
+     * PuzzlePool class constructor for classic 9x9 puzzles. Starts the worker thread.
+     * @param depth number of puzzles kept ready, at least 1.
+     * @param refillThreshold the worker refills the pool when at most this many
+     *                        puzzles are left, from 0 to depth - 1.
+     */
+    public PuzzlePool(int depth, int refillThreshold) {
+        this(Geometry.CLASSIC, depth, refillThreshold);
+    }
+
+    /**
+     * PuzzlePool class constructor. Starts the worker thread.
+     * @param geometry shape of the puzzles to generate.
+     * @param depth number of puzzles kept ready, at least 1.
+     * @param refillThreshold the worker refills the pool when at most this many
+     *                        puzzles are left, from 0 to depth - 1.
+     */
+    public PuzzlePool(Geometry geometry, int depth, int refillThreshold) {
+        if (depth < 1)
+            throw new IllegalArgumentException("Pool depth must be positive: " + depth);
+        if (refillThreshold < 0 || refillThreshold >= depth)
+            throw new IllegalArgumentException("Refill threshold must be in [0, " + depth + "): " + refillThreshold);
+
+        int capacity = Integer.highestOneBit(depth);
+        if (capacity < depth)
+            capacity <<= 1;
+
+        ring = new AtomicReferenceArray<>(capacity);
+        mask = capacity - 1;
+        head = new AtomicLong();
+        tail = new AtomicLong();
+        this.depth = depth;
+        this.refillThreshold = refillThreshold;
+        this.geometry = geometry;
+
+        hits = new AtomicLong();
+        misses = new AtomicLong();
+        refills = new AtomicLong();
+        refillNanos = new AtomicLong();
+        maxRefillNanos = new AtomicLong();
+
+        running = true;
+        worker = new Thread(this::produce, "KSudoku puzzle pool");
+        worker.setDaemon(true);
+        worker.setPriority(Thread.MIN_PRIORITY);
+        worker.start();
+    }
+
+    /**
+     * Takes a ready puzzle without blocking.
+     * @return a puzzle, or null if none is ready.
+     */
+    public Puzzle poll() {
+        while (true) {
+            long h = head.get();
+            if (h >= tail.get()) {
+                misses.incrementAndGet();
+                LockSupport.unpark(worker);
+                return null;
+            }
+
+            Puzzle puzzle = ring.get((int) h & mask);
+            if (head.compareAndSet(h, h + 1)) {
+                ring.compareAndSet((int) h & mask, puzzle, null);
+                hits.incrementAndGet();
+                if (tail.get() - h - 1 <= refillThreshold)
+                    LockSupport.unpark(worker);
+                return puzzle;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of puzzles ready right now.
+     * @return ready puzzles count.
+     */
+    public int size() {
+        return (int) Math.max(0, tail.get() - head.get());
+    }
+
+    /**
+     * Stops the worker thread. Puzzles already in the pool can still be taken.
+     */
+    public void shutdown() {
+        running = false;
+        LockSupport.unpark(worker);
+    }
+
+    /**
+     * Worker loop: fill the ring up to the depth, then sleep until woken.
+     */
+    private void produce() {
+        Generator generator = new Generator(geometry, new Random());
+
+        while (running) {
+            while (running && tail.get() - head.get() < depth) {
+                long start = System.nanoTime();
+                Puzzle puzzle = generator.generate();
+                long elapsed = System.nanoTime() - start;
+
+                long t = tail.get();
+                ring.set((int) t & mask, puzzle);
+                tail.set(t + 1);
+
+                refills.incrementAndGet();
+                refillNanos.addAndGet(elapsed);
+                maxRefillNanos.accumulateAndGet(elapsed, Math::max);
+            }
+
+            /* Sleep until a consumer drains the pool down to the threshold. */
+            while (running && tail.get() - head.get() > refillThreshold)
+                LockSupport.park(this);
+        }
+    }
+
+    /**
+     * Returns the number of takes served from the pool.
+     * @return hits count.
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of takes that found the pool empty.
+     * @return misses count.
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Returns the fraction of takes served from the pool.
+     * @return hit rate from 0 to 1, or 0 before the first take.
+     */
+    public double getHitRate() {
+        long h = hits.get(), total = h + misses.get();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    /**
+     * Returns the average time the worker needed to generate one puzzle.
+     * @return average refill latency in nanoseconds.
+     */
+    public long getAverageRefillNanos() {
+        long count = refills.get();
+        return count == 0 ? 0 : refillNanos.get() / count;
+    }
+
+    /**
+     * Returns the longest time the worker needed to generate one puzzle.
+     * @return maximum refill latency in nanoseconds.
+     */
+    public long getMaxRefillNanos() {
+        return maxRefillNanos.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("PuzzlePool[size=%d/%d, hits=%d, misses=%d, hitRate=%.3f, refills=%d, avgRefill=%dus, maxRefill=%dus]",
+                size(), depth, getHits(), getMisses(), getHitRate(), refills.get(),
+                getAverageRefillNanos() / 1000, getMaxRefillNanos() / 1000);
+    }
+}
@@ -0,0 +1,569 @@
+package KSudoku;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+/**
+ * Difficulty rating engine.
+ * Solves a puzzle the way a person would: at every step it applies the
+ * cheapest technique that makes progress, starting again from the
+ * cheapest one after each step. The rating is the hardest technique
+ * that had to be used, or GUESS when the techniques run out.
+ * Working memory is allocated once, a Rater instance is not thread safe.
+ * Raters shared across threads come from one EnginePool per geometry, so
+ * many short-lived (e.g. virtual) threads do not each build their own.
+ */
+public class Rater {
+    private static final Map<Geometry, EnginePool<Rater>> POOLS =   /* shared raters per board shape, by value */
+            new ConcurrentHashMap<>();
+
+    private final Geometry geometry;    /* board shape */
+    private final int size;             /* digits in a unit */
+    private final int cells;            /* cells in the grid */
+    private final int all;              /* mask with all digits set */
+
+    private int[] values;       /* digit in each cell, 0 when empty */
+    private int[] cand;         /* candidates mask of each empty cell */
+    private int empty;          /* number of empty cells */
+    private int[] unitCells;    /* empty cells of the unit being examined */
+    private int[] positions;    /* per digit, mask of unit indices where it can go */
+    private int[] lines;        /* per line, mask of cross lines where a digit can go */
+    private int[] hintGrid;     /* board reduced to its sound digits, for hints */
+
+    private int lastCell;       /* cell filled by the last step, -1 for an elimination */
+    private int lastDigit;      /* digit placed by the last step */
+
+    /**
+     * Rater class default constructor, for the classic 9x9 board.
+     */
+    public Rater() {
+        this(Geometry.CLASSIC);
+    }
+
+    /**
+     * Rater class constructor.
+     * Candidates are int masks, enough for boards up to 25x25.
+     * @param geometry shape of the boards to rate.
+     */
+    public Rater(Geometry geometry) {
+        this.geometry = geometry;
+        size = geometry.size;
+        cells = geometry.cells;
+        all = (int) geometry.all;
+
+        values = new int[cells];
+        cand = new int[cells];
+        unitCells = new int[size];
+        positions = new int[size];
+        lines = new int[size];
+        hintGrid = new int[cells];
+    }
+
+    /**
+     * Returns the shared pool of raters of a geometry.
+     * @param geometry shape of the boards to rate.
+     * @return the pool, the same one for every call with this geometry.
+     */
+    static EnginePool<Rater> pool(Geometry geometry) {
+        return POOLS.computeIfAbsent(geometry, shape -> new EnginePool<>(() -> new Rater(shape)));
+    }
+
+    /**
+     * Rates a puzzle on a Rater taken from the shared pool.
+     * @param puzzle puzzle to rate.
+     * @return the hardest technique needed.
+     */
+    static Technique rateShared(Puzzle puzzle) {
+        EnginePool<Rater> pool = pool(puzzle.getGeometry());
+        Rater rater = pool.take();
+        try {
+            return rater.rate(puzzle.toGrid());
+        } finally {
+            pool.give(rater);
+        }
+    }
+
+    /**
+     * Rates a puzzle.
+     * @param grid N * N cell values in row-major order, 0 for an empty cell. Not modified.
+     * @return the hardest technique needed to solve it.
+     */
+    public Technique rate(int[] grid) {
+        if (!load(grid))
+            return Technique.GUESS;
+
+        Technique hardest = Technique.HIDDEN_SINGLE;
+        while (empty > 0) {
+            Technique used = step();
+            if (used == null)
+                return Technique.GUESS;
+            if (used.compareTo(hardest) > 0)
+                hardest = used;
+        }
+        return hardest;
+    }
+
+    /**
+     * Finds the next logical deduction on a board being played.
+     * Digits that do not match the solution are ignored, so the hint is
+     * sound even when the player made mistakes; it may then point at a
+     * cell holding a wrong digit. When the techniques run out, the empty
+     * cell with the fewest candidates is revealed from the solution.
+     * @param board the board being played.
+     * @param puzzle the puzzle on the board.
+     * @return the hint, or null when the board is solved.
+     */
+    public Hint hint(BoardState board, Puzzle puzzle) {
+        return hint(board, puzzle, Deadline.NONE);
+    }
+
+    /**
+     * Finds the next logical deduction on a board being played, within a
+     * deadline. When the time is up before a technique places a digit, the
+     * empty cell with the fewest candidates left by the deductions made so
+     * far is revealed from the solution, as when the techniques run out.
+     * @param board the board being played.
+     * @param puzzle the puzzle on the board.
+     * @param deadline time limit or cancellation token of the hint.
+     * @return the hint, or null when the board is solved.
+     */
+    public Hint hint(BoardState board, Puzzle puzzle, Deadline deadline) {
+        for (int cell = 0; cell < cells; ++cell)
+            hintGrid[cell] = board.isCorrect(cell, puzzle) ? board.get(cell) : 0;
+        load(hintGrid);
+
+        Technique hardest = Technique.HIDDEN_SINGLE;
+        while (empty > 0 && !deadline.poll()) {
+            Technique used = step();
+            if (used == null)
+                break;
+            if (used.compareTo(hardest) > 0)
+                hardest = used;
+            if (lastCell >= 0)
+                return new Hint(lastCell, lastDigit, hardest);
+        }
+        if (empty == 0)
+            return null;
+
+        int bestCell = -1;
+        for (int cell = 0; cell < cells; ++cell)
+            if (values[cell] == 0 && (bestCell < 0 || Integer.bitCount(cand[cell]) < Integer.bitCount(cand[bestCell])))
+                bestCell = cell;
+        return new Hint(bestCell, puzzle.get(bestCell), Technique.GUESS);
+    }
+
+    /**
+     * Loads a grid and computes the candidates of every empty cell.
+     * @return false if the givens collide.
+     */
+    boolean load(int[] grid) {
+        empty = cells;
+        for (int cell = 0; cell < cells; ++cell) {
+            values[cell] = 0;
+            cand[cell] = all;
+        }
+
+        for (int cell = 0; cell < cells; ++cell)
+            if (grid[cell] != 0) {
+                if ((cand[cell] & (1 << (grid[cell] - 1))) == 0)
+                    return false;
+                place(cell, grid[cell]);
+            }
+        return true;
+    }
+
+    /**
+     * Applies the cheapest technique that makes progress, once.
+     * @return the technique used, or null if none applies or the grid is broken.
+     */
+    Technique step() {
+        lastCell = -1;
+        for (int cell = 0; cell < cells; ++cell)
+            if (values[cell] == 0 && cand[cell] == 0)
+                return null;
+
+        if (hiddenSingle())
+            return Technique.HIDDEN_SINGLE;
+        if (nakedSingle())
+            return Technique.NAKED_SINGLE;
+        if (pointing())
+            return Technique.POINTING;
+        if (claiming())
+            return Technique.CLAIMING;
+        if (nakedSubset(2))
+            return Technique.NAKED_PAIR;
+        if (hiddenSubset(2))
+            return Technique.HIDDEN_PAIR;
+        if (nakedSubset(3))
+            return Technique.NAKED_TRIPLE;
+        if (hiddenSubset(3))
+            return Technique.HIDDEN_TRIPLE;
+        if (fish(2))
+            return Technique.X_WING;
+        if (fish(3))
+            return Technique.SWORDFISH;
+        return null;
+    }
+
+    /**
+     * Returns the cell filled by the last step.
+     * @return cell index, or -1 if the last step only removed candidates.
+     */
+    int getLastCell() {
+        return lastCell;
+    }
+
+    /**
+     * Returns the digit placed by the last step.
+     * @return digit from 1 to N, meaningful only when getLastCell() is not -1.
+     */
+    int getLastDigit() {
+        return lastDigit;
+    }
+
+    /**
+     * Returns the number of cells left empty.
+     * @return empty cells count.
+     */
+    int getEmptyCount() {
+        return empty;
+    }
+
+    /**
+     * Fills a cell and removes the digit from its peers' candidates.
+     */
+    private void place(int cell, int digit) {
+        int bit = 1 << (digit - 1);
+        values[cell] = digit;
+        cand[cell] = 0;
+        --empty;
+
+        for (int k = geometry.peersStart[cell]; k < geometry.peersStart[cell + 1]; ++k)
+            cand[geometry.peers[k]] &= ~bit;
+
+        lastCell = cell;
+        lastDigit = digit;
+    }
+
+    /**
+     * Removes candidates from an empty cell.
+     * @return true if anything was removed.
+     */
+    private boolean eliminate(int cell, int bits) {
+        if (values[cell] != 0 || (cand[cell] & bits) == 0)
+            return false;
+        cand[cell] &= ~bits;
+        return true;
+    }
+
+    private boolean hiddenSingle() {
+        for (int unit = 0; unit < geometry.units; ++unit) {
+            int once = 0, twice = 0;
+            int first = unit * size;
+
+            for (int k = 0; k < size; ++k) {
+                int c = cand[geometry.unitCells[first + k]];
+                twice |= once & c;
+                once |= c;
+            }
+
+            int hidden = once & ~twice;
+            if (hidden == 0)
+                continue;
+
+            int bit = hidden & -hidden;
+            for (int k = 0; k < size; ++k) {
+                int cell = geometry.unitCells[first + k];
+                if ((cand[cell] & bit) != 0) {
+                    place(cell, Integer.numberOfTrailingZeros(bit) + 1);
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean nakedSingle() {
+        for (int cell = 0; cell < cells; ++cell) {
+            int c = cand[cell];
+            if (values[cell] == 0 && (c & (c - 1)) == 0) {
+                place(cell, Integer.numberOfTrailingZeros(c) + 1);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A digit confined to one row or column of a box goes nowhere else in that line.
+     */
+    private boolean pointing() {
+        for (int box = 0; box < size; ++box) {
+            int first = (2 * size + box) * size;
+
+            for (int bit = 1; bit < all; bit <<= 1) {
+                int rows = 0, cols = 0;
+                for (int k = 0; k < size; ++k) {
+                    int cell = geometry.unitCells[first + k];
+                    if ((cand[cell] & bit) != 0) {
+                        rows |= 1 << (cell / size);
+                        cols |= 1 << (cell % size);
+                    }
+                }
+
+                boolean changed = false;
+                if (Integer.bitCount(rows) == 1) {
+                    int row = Integer.numberOfTrailingZeros(rows);
+                    for (int col = 0; col < size; ++col) {
+                        int cell = row * size + col;
+                        if (geometry.regionOf(cell) != box)
+                            changed |= eliminate(cell, bit);
+                    }
+                }
+                if (Integer.bitCount(cols) == 1) {
+                    int col = Integer.numberOfTrailingZeros(cols);
+                    for (int row = 0; row < size; ++row) {
+                        int cell = row * size + col;
+                        if (geometry.regionOf(cell) != box)
+                            changed |= eliminate(cell, bit);
+                    }
+                }
+                if (changed)
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A digit of a row or column confined to one box goes nowhere else in that box.
+     */
+    private boolean claiming() {
+        for (int line = 0; line < 2 * size; ++line) {
+            int first = line * size;
+
+            for (int bit = 1; bit < all; bit <<= 1) {
+                int boxes = 0;
+                for (int k = 0; k < size; ++k) {
+                    int cell = geometry.unitCells[first + k];
+                    if ((cand[cell] & bit) != 0)
+                        boxes |= 1 << geometry.regionOf(cell);
+                }
+                if (Integer.bitCount(boxes) != 1)
+                    continue;
+
+                int boxFirst = (2 * size + Integer.numberOfTrailingZeros(boxes)) * size;
+                boolean changed = false;
+                for (int k = 0; k < size; ++k) {
+                    int cell = geometry.unitCells[boxFirst + k];
+                    if (geometry.cellUnits[geometry.cellUnitsStart[cell] + (line < size ? 0 : 1)] != line)
+                        changed |= eliminate(cell, bit);
+                }
+                if (changed)
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Order cells of a unit holding only order candidates between them
+     * take those digits away from the rest of the unit.
+     */
+    private boolean nakedSubset(int order) {
+        for (int unit = 0; unit < geometry.units; ++unit) {
+            int first = unit * size;
+            int count = 0;
+            for (int k = 0; k < size; ++k) {
+                int cell = geometry.unitCells[first + k];
+                int n = Integer.bitCount(cand[cell]);
+                if (values[cell] == 0 && n >= 2 && n <= order)
+                    unitCells[count++] = cell;
+            }
+
+            for (int a = 0; a < count; ++a)
+                for (int b = a + 1; b < count; ++b) {
+                    int ab = cand[unitCells[a]] | cand[unitCells[b]];
+                    if (order == 2) {
+                        if (Integer.bitCount(ab) == 2 && clearOthers(first, ab, unitCells[a], unitCells[b], -1))
+                            return true;
+                        continue;
+                    }
+                    for (int c = b + 1; c < count; ++c) {
+                        int abc = ab | cand[unitCells[c]];
+                        if (Integer.bitCount(abc) == 3
+                                && clearOthers(first, abc, unitCells[a], unitCells[b], unitCells[c]))
+                            return true;
+                    }
+                }
+        }
+        return false;
+    }
+
+    /**
+     * Removes digits from all cells of a unit except the given ones.
+     */
+    private boolean clearOthers(int first, int bits, int keep1, int keep2, int keep3) {
+        boolean changed = false;
+        for (int k = 0; k < size; ++k) {
+            int cell = geometry.unitCells[first + k];
+            if (cell != keep1 && cell != keep2 && cell != keep3)
+                changed |= eliminate(cell, bits);
+        }
+        return changed;
+    }
+
+    /**
+     * Order digits of a unit confined to the same order cells
+     * leave no room for other candidates in those cells.
+     */
+    private boolean hiddenSubset(int order) {
+        for (int unit = 0; unit < geometry.units; ++unit) {
+            int first = unit * size;
+            for (int d = 0; d < size; ++d) {
+                positions[d] = 0;
+                for (int k = 0; k < size; ++k)
+                    if ((cand[geometry.unitCells[first + k]] & (1 << d)) != 0)
+                        positions[d] |= 1 << k;
+            }
+
+            for (int a = 0; a < size; ++a) {
+                if (!fits(positions[a], order))
+                    continue;
+                for (int b = a + 1; b < size; ++b) {
+                    if (!fits(positions[b], order))
+                        continue;
+                    int ab = positions[a] | positions[b];
+                    if (order == 2) {
+                        if (Integer.bitCount(ab) == 2 && keepOnly(first, ab, (1 << a) | (1 << b)))
+                            return true;
+                        continue;
+                    }
+                    for (int c = b + 1; c < size; ++c) {
+                        if (!fits(positions[c], order))
+                            continue;
+                        int abc = ab | positions[c];
+                        if (Integer.bitCount(abc) == 3 && keepOnly(first, abc, (1 << a) | (1 << b) | (1 << c)))
+                            return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean fits(int mask, int order) {
+        int n = Integer.bitCount(mask);
+        return n >= 2 && n <= order;
+    }
+
+    /**
+     * Leaves only the given digits in the given unit cells.
+     */
+    private boolean keepOnly(int first, int cellsMask, int digits) {
+        boolean changed = false;
+        for (int k = 0; k < size; ++k)
+            if ((cellsMask & (1 << k)) != 0)
+                changed |= eliminate(geometry.unitCells[first + k], ~digits & all);
+        return changed;
+    }
+
+    /**
+     * X-wing (order 2) and swordfish (order 3): a digit confined to the same
+     * order columns in order rows goes nowhere else in those columns, and
+     * the same with rows and columns swapped.
+     */
+    private boolean fish(int order) {
+        for (int bit = 1; bit < all; bit <<= 1)
+            for (int byRows = 0; byRows < 2; ++byRows) {
+                for (int base = 0; base < size; ++base) {
+                    lines[base] = 0;
+                    for (int cover = 0; cover < size; ++cover) {
+                        int cell = byRows == 1 ? base * size + cover : cover * size + base;
+                        if ((cand[cell] & bit) != 0)
+                            lines[base] |= 1 << cover;
+                    }
+                }
+
+                for (int a = 0; a < size; ++a) {
+                    if (!fits(lines[a], order))
+                        continue;
+                    for (int b = a + 1; b < size; ++b) {
+                        if (!fits(lines[b], order))
+                            continue;
+                        int ab = lines[a] | lines[b];
+                        if (order == 2) {
+                            if (Integer.bitCount(ab) == 2
+                                    && clearCovers(bit, byRows == 1, ab, (1 << a) | (1 << b)))
+                                return true;
+                            continue;
+                        }
+                        for (int c = b + 1; c < size; ++c) {
+                            if (!fits(lines[c], order))
+                                continue;
+                            int abc = ab | lines[c];
+                            if (Integer.bitCount(abc) == 3
+                                    && clearCovers(bit, byRows == 1, abc, (1 << a) | (1 << b) | (1 << c)))
+                                return true;
+                        }
+                    }
+                }
+            }
+        return false;
+    }
+
+    /**
+     * Removes a digit from the cover lines everywhere outside the base lines.
+     */
+    private boolean clearCovers(int bit, boolean byRows, int covers, int bases) {
+        boolean changed = false;
+        for (int base = 0; base < size; ++base) {
+            if ((bases & (1 << base)) != 0)
+                continue;
+            for (int cover = 0; cover < size; ++cover)
+                if ((covers & (1 << cover)) != 0)
+                    changed |= eliminate(byRows ? base * size + cover : cover * size + base, bit);
+        }
+        return changed;
+    }
+
+    /**
+     * Rates every puzzle of a corpus on all cores and writes one byte per
+     * record, the ordinal of its hardest technique, to a side file.
+     * @param corpus corpus to rate.
+     * @param output path of the ratings file, overwritten if it exists.
+     * @return number of puzzles per technique, indexed by ordinal.
+     * @throws IOException when writing fails.
+     */
+    public static long[] rateCorpus(PuzzleCorpus corpus, Path output) throws IOException {
+        final int batch = 1 << 16;
+        long[] histogram = new long[Technique.values().length];
+        byte[] ratings = new byte[batch];
+
+        try (FileChannel out = FileChannel.open(output, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (long done = 0; done < corpus.size(); ) {
+                long start = done;
+                int n = (int) Math.min(batch, corpus.size() - done);
+
+                IntStream.range(0, n).parallel().forEach(i ->
+                        ratings[i] = (byte) corpus.get(start + i).getRating().ordinal());
+
+                for (int i = 0; i < n; ++i)
+                    ++histogram[ratings[i]];
+
+                ByteBuffer buffer = ByteBuffer.wrap(ratings, 0, n);
+                while (buffer.hasRemaining())
+                    out.write(buffer);
+                done += n;
+            }
+        }
+        return histogram;
+    }
+}
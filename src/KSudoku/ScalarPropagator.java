@@ -0,0 +1,69 @@
+package KSudoku;
+
+/**
+ * Scalar LanePropagator, one puzzle at a time; the fallback when the
+ * Vector API is not available, and the reference for VectorPropagator,
+ * which runs the same steps on all lanes at once.
+ * Not thread safe.
+ */
+public class ScalarPropagator implements LanePropagator {
+    private final Geometry geometry;    /* shape of the puzzles */
+    private final int all;              /* mask with all N digits set */
+
+    /**
+     * ScalarPropagator class constructor.
+     * @param geometry shape of the puzzles, up to 25x25.
+     */
+    public ScalarPropagator(Geometry geometry) {
+        this.geometry = geometry;
+        all = (int) geometry.all;
+    }
+
+    @Override
+    public int lanes() {
+        return 1;
+    }
+
+    @Override
+    public void propagate(int[] candidates) {
+        int size = geometry.size;
+        int[] unitCells = geometry.unitCells;
+
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int first = 0; first < unitCells.length; first += size) {
+                /* Digits placed in the unit, placed twice, seen once and seen twice. */
+                int fixed = 0, duplicate = 0, once = 0, twice = 0;
+                for (int k = first; k < first + size; ++k) {
+                    int mask = candidates[unitCells[k]];
+                    int single = (mask & (mask - 1)) == 0 ? mask : 0;
+                    duplicate |= fixed & single;
+                    fixed |= single;
+                    twice |= once & mask;
+                    once |= mask;
+                }
+
+                boolean broken = duplicate != 0 || once != all;
+                int hidden = once & ~twice & ~fixed;
+                for (int k = first; k < first + size; ++k) {
+                    int cell = unitCells[k];
+                    int old = candidates[cell], mask = old;
+                    if ((mask & (mask - 1)) != 0) {
+                        mask &= ~fixed;
+                        if ((mask & hidden) != 0)
+                            mask &= hidden;
+                    }
+                    if (broken)
+                        mask = 0;
+                    if (mask != old) {
+                        candidates[cell] = mask;
+                        changed = true;
+                    }
+                }
+                if (broken)
+                    return;
+            }
+        }
+    }
+}
@@ -0,0 +1,396 @@
+package KSudoku;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Store of live game sessions, e.g. of a multi-player backend, packed into
+ * fixed-size slots of one off-heap direct buffer instead of heap objects.
+ * A classic slot takes 80 bytes: a generation counter, the free list link,
+ * the last access time, 41 bytes of cell values two per byte (high nibble
+ * first; one byte per cell on boards of more than 15 digits), and the
+ * givens and conflicts bitmasks of 11 bytes each. 100k sessions fit in 8 MB
+ * and add nothing for the garbage collector to trace.
+ * A session is named by a handle joining its slot and the slot's generation,
+ * so the handle of a closed or evicted session is never taken for the one
+ * reusing its slot. Slot accesses lock one of STRIPES monitors, chosen by
+ * the slot, and free slots are kept on a lock-free stack. A daemon sweeper
+ * thread evicts sessions not accessed for longer than the idle timeout.
+ */
+public class SessionStore {
+    static final int STRIPES = 64;                  /* slot locks, power of two */
+
+    private static final int GENERATION = 0;        /* int, odd while the slot is in use */
+    private static final int NEXT_FREE = 4;         /* int, next free slot + 1, 0 for none */
+    private static final int LAST_ACCESS = 8;       /* long, milliseconds */
+    private static final int VALUES = 16;           /* packed cell values */
+
+    private final Geometry geometry;    /* shape of the boards */
+    private final int capacity;         /* number of slots */
+    private final int valueBytes;       /* length of the packed values */
+    private final int maskBytes;        /* length of a cell bitmask */
+    private final int givensOffset;     /* givens bitmask offset in a slot */
+    private final int conflictsOffset;  /* conflicts bitmask offset in a slot */
+    private final int slotSize;         /* bytes per slot, a multiple of 8 */
+    private final ByteBuffer slots;     /* all slots, off-heap */
+    private final Object[] stripes;     /* slot s is guarded by stripes[s & (STRIPES - 1)] */
+
+    private final AtomicLong freeHead;  /* free stack top: stamp in the high half, slot + 1 in the low half */
+    private final AtomicInteger size;   /* sessions in use */
+    private final AtomicLong evictions; /* sessions evicted by the sweeper */
+    private final long idleMillis;      /* idle time after which a session is evicted */
+
+    private final Thread sweeper;       /* evicts idle sessions, null without a timeout */
+    private volatile boolean running;   /* cleared by shutdown() */
+
+    /**
+     * SessionStore class constructor. Allocates all slots and starts the sweeper.
+     * @param geometry shape of the boards.
+     * @param capacity maximum number of sessions.
+     * @param idleMillis sessions not accessed for this long are evicted,
+     *                   0 to keep them until closed.
+     */
+    public SessionStore(Geometry geometry, int capacity, long idleMillis) {
+        this.geometry = geometry;
+        valueBytes = geometry.size < 16 ? (geometry.cells + 1) / 2 : geometry.cells;
+        maskBytes = (geometry.cells + 7) / 8;
+        givensOffset = VALUES + valueBytes;
+        conflictsOffset = givensOffset + maskBytes;
+        slotSize = (conflictsOffset + maskBytes + 7) & ~7;
+
+        if (capacity < 1 || capacity > Integer.MAX_VALUE / slotSize)
+            throw new IllegalArgumentException("Capacity must be in [1, " + Integer.MAX_VALUE / slotSize + "]: " + capacity);
+        if (idleMillis < 0)
+            throw new IllegalArgumentException("Idle timeout must not be negative: " + idleMillis);
+
+        this.capacity = capacity;
+        this.idleMillis = idleMillis;
+        slots = ByteBuffer.allocateDirect(capacity * slotSize);
+        stripes = new Object[STRIPES];
+        for (int i = 0; i < STRIPES; ++i)
+            stripes[i] = new Object();
+
+        /* Chain all slots into the free stack, slot 0 on top. */
+        for (int slot = 0; slot < capacity; ++slot)
+            slots.putInt(slot * slotSize + NEXT_FREE, slot + 1 < capacity ? slot + 2 : 0);
+        freeHead = new AtomicLong(1);
+        size = new AtomicInteger();
+        evictions = new AtomicLong();
+
+        if (idleMillis == 0) {
+            sweeper = null;
+            return;
+        }
+        running = true;
+        sweeper = new Thread(this::sweepLoop, "KSudoku session sweeper");
+        sweeper.setDaemon(true);
+        sweeper.start();
+    }
+
+    /**
+     * Opens a session for a puzzle, with only the givens filled.
+     * @param puzzle the puzzle to play, of this store's geometry.
+     * @return the session handle, or -1 when the store is full.
+     */
+    public long open(Puzzle puzzle) {
+        int slot = popFree();
+        if (slot < 0)
+            return -1;
+
+        int base = slot * slotSize;
+        synchronized (stripe(slot)) {
+            for (int i = VALUES; i < slotSize; ++i)
+                slots.put(base + i, (byte) 0);
+            for (int cell = 0; cell < geometry.cells; ++cell)
+                if (puzzle.isGiven(cell)) {
+                    putValue(base, cell, puzzle.get(cell));
+                    setBit(base + givensOffset, cell, true);
+                }
+
+            int generation = slots.getInt(base + GENERATION) + 1;
+            slots.putInt(base + GENERATION, generation);
+            slots.putLong(base + LAST_ACCESS, System.currentTimeMillis());
+            size.incrementAndGet();
+            return (long) generation << 32 | slot;
+        }
+    }
+
+    /**
+     * Sets the digit of a cell and updates the conflicts of the cell and its peers.
+     * @param session session handle.
+     * @param cell cell index in row-major order.
+     * @param digit new digit, 0 to empty the cell.
+     * @return false when the session is gone or the cell is a given.
+     */
+    public boolean set(long session, int cell, int digit) {
+        int slot = (int) session;
+        checkCell(cell);
+        if (digit < 0 || digit > geometry.size)
+            throw new IllegalArgumentException("Digit must be in [0, " + geometry.size + "]: " + digit);
+
+        synchronized (stripe(slot)) {
+            int base = access(session);
+            if (base < 0 || getBit(base + givensOffset, cell))
+                return false;
+
+            int old = getValue(base, cell);
+            if (old == digit)
+                return true;
+            putValue(base, cell, digit);
+
+            /* Only the cell and the peers holding the old or the new digit can change. */
+            updateConflict(base, cell);
+            for (int k = geometry.peersStart[cell]; k < geometry.peersStart[cell + 1]; ++k) {
+                int peer = geometry.peers[k];
+                int value = getValue(base, peer);
+                if (value != 0 && (value == old || value == digit))
+                    updateConflict(base, peer);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Returns the digit of a cell.
+     * @param session session handle.
+     * @param cell cell index in row-major order.
+     * @return digit from 1 to N, 0 when empty, -1 when the session is gone.
+     */
+    public int get(long session, int cell) {
+        checkCell(cell);
+        synchronized (stripe((int) session)) {
+            int base = access(session);
+            return base < 0 ? -1 : getValue(base, cell);
+        }
+    }
+
+    /**
+     * Tells whether a cell holds a digit that a peer holds as well.
+     * @param session session handle.
+     * @param cell cell index in row-major order.
+     * @return true for a conflict, false also when the session is gone.
+     */
+    public boolean isConflict(long session, int cell) {
+        checkCell(cell);
+        synchronized (stripe((int) session)) {
+            int base = access(session);
+            return base >= 0 && getBit(base + conflictsOffset, cell);
+        }
+    }
+
+    /**
+     * Tells whether the board of a session is complete and free of conflicts,
+     * which is a solution by the rules alone.
+     * @param session session handle.
+     * @return true when solved, false also when the session is gone.
+     */
+    public boolean isSolved(long session) {
+        synchronized (stripe((int) session)) {
+            int base = access(session);
+            if (base < 0)
+                return false;
+            for (int i = 0; i < maskBytes; ++i)
+                if (slots.get(base + conflictsOffset + i) != 0)
+                    return false;
+            for (int cell = 0; cell < geometry.cells; ++cell)
+                if (getValue(base, cell) == 0)
+                    return false;
+            return true;
+        }
+    }
+
+    /**
+     * Closes a session and frees its slot.
+     * @param session session handle.
+     * @return false when the session was already gone.
+     */
+    public boolean close(long session) {
+        int slot = (int) session;
+        synchronized (stripe(slot)) {
+            if (access(session) < 0)
+                return false;
+            release(slot);
+        }
+        pushFree(slot);
+        return true;
+    }
+
+    /**
+     * Evicts the sessions left idle for longer than the idle timeout.
+     * Called by the sweeper thread, may also be called directly.
+     * @param now current time in milliseconds.
+     * @return number of evicted sessions.
+     */
+    public int sweep(long now) {
+        int evicted = 0;
+        for (int slot = 0; slot < capacity; ++slot) {
+            int base = slot * slotSize;
+            synchronized (stripe(slot)) {
+                if ((slots.getInt(base + GENERATION) & 1) == 0
+                        || now - slots.getLong(base + LAST_ACCESS) <= idleMillis)
+                    continue;
+                release(slot);
+            }
+            pushFree(slot);
+            ++evicted;
+        }
+        evictions.addAndGet(evicted);
+        return evicted;
+    }
+
+    /**
+     * Returns the number of open sessions.
+     * @return sessions count.
+     */
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * Returns the number of sessions evicted by sweeps so far.
+     * @return evictions count.
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * Returns the off-heap memory taken by the slots.
+     * @return size in bytes.
+     */
+    public long getMemoryBytes() {
+        return (long) capacity * slotSize;
+    }
+
+    /**
+     * Stops the sweeper thread. Sessions stay accessible.
+     */
+    public void shutdown() {
+        running = false;
+        if (sweeper != null)
+            LockSupport.unpark(sweeper);
+    }
+
+    /**
+     * Sweeper loop: sweeps four times per idle timeout.
+     */
+    private void sweepLoop() {
+        while (running) {
+            LockSupport.parkNanos(idleMillis * 250_000L);
+            if (running)
+                sweep(System.currentTimeMillis());
+        }
+    }
+
+    private Object stripe(int slot) {
+        return stripes[slot & (STRIPES - 1)];
+    }
+
+    /**
+     * Rejects a cell index outside the board, which would address the slot
+     * of another session.
+     */
+    private void checkCell(int cell) {
+        if (cell < 0 || cell >= geometry.cells)
+            throw new IllegalArgumentException("Cell must be in [0, " + geometry.cells + "): " + cell);
+    }
+
+    /**
+     * Returns the offset of a session's slot, checking the handle, and
+     * records the access. The caller holds the slot's stripe.
+     * @return the offset, -1 when the session is gone.
+     */
+    private int access(long session) {
+        int slot = (int) session;
+        if (slot < 0 || slot >= capacity)
+            return -1;
+        int base = slot * slotSize;
+        int generation = slots.getInt(base + GENERATION);
+        if ((generation & 1) == 0 || generation != (int) (session >>> 32))
+            return -1;
+        slots.putLong(base + LAST_ACCESS, System.currentTimeMillis());
+        return base;
+    }
+
+    /**
+     * Marks a slot free by moving its generation on. The caller holds the
+     * slot's stripe and pushes the slot on the free stack afterwards.
+     */
+    private void release(int slot) {
+        int base = slot * slotSize;
+        slots.putInt(base + GENERATION, slots.getInt(base + GENERATION) + 1);
+        size.decrementAndGet();
+    }
+
+    /**
+     * Pops a slot from the free stack. The stamp in the high half of the
+     * head changes on every pop and push, so a slot popped and pushed back
+     * in the meantime cannot make a stale compare-and-set succeed.
+     * @return the slot, -1 when none is free.
+     */
+    private int popFree() {
+        while (true) {
+            long head = freeHead.get();
+            int top = (int) head - 1;
+            if (top < 0)
+                return -1;
+            int next = slots.getInt(top * slotSize + NEXT_FREE);
+            long stamp = (head >>> 32) + 1;
+            if (freeHead.compareAndSet(head, stamp << 32 | next))
+                return top;
+        }
+    }
+
+    private void pushFree(int slot) {
+        while (true) {
+            long head = freeHead.get();
+            slots.putInt(slot * slotSize + NEXT_FREE, (int) head);
+            long stamp = (head >>> 32) + 1;
+            if (freeHead.compareAndSet(head, stamp << 32 | (slot + 1)))
+                return;
+        }
+    }
+
+    /**
+     * Sets the conflict bit of a cell from its peers' values.
+     */
+    private void updateConflict(int base, int cell) {
+        int value = getValue(base, cell);
+        boolean conflict = false;
+        if (value != 0) {
+            for (int k = geometry.peersStart[cell]; k < geometry.peersStart[cell + 1] && !conflict; ++k)
+                conflict = getValue(base, geometry.peers[k]) == value;
+        }
+        setBit(base + conflictsOffset, cell, conflict);
+    }
+
+    private int getValue(int base, int cell) {
+        if (geometry.size >= 16)
+            return slots.get(base + VALUES + cell);
+        int packed = slots.get(base + VALUES + (cell >>> 1));
+        return (cell & 1) == 0 ? (packed >>> 4) & 0xF : packed & 0xF;
+    }
+
+    private void putValue(int base, int cell, int value) {
+        if (geometry.size >= 16) {
+            slots.put(base + VALUES + cell, (byte) value);
+            return;
+        }
+        int offset = base + VALUES + (cell >>> 1);
+        int packed = slots.get(offset);
+        packed = (cell & 1) == 0 ? (packed & 0x0F) | value << 4 : (packed & 0xF0) | value;
+        slots.put(offset, (byte) packed);
+    }
+
+    private boolean getBit(int offset, int cell) {
+        return (slots.get(offset + (cell >>> 3)) & (1 << (cell & 7))) != 0;
+    }
+
+    private void setBit(int offset, int cell, boolean value) {
+        int bits = slots.get(offset + (cell >>> 3));
+        bits = value ? bits | 1 << (cell & 7) : bits & ~(1 << (cell & 7));
+        slots.put(offset + (cell >>> 3), (byte) bits);
+    }
+}
@@ -0,0 +1,332 @@
+package KSudoku;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded concurrent cache of solver results, in front of the solving and
+ * validation services, so that a popular puzzle is searched only once.
+ * A puzzle is keyed by a 128-bit fingerprint of its cells instead of its
+ * String, and an entry holds the puzzle and its solution packed two cells
+ * per byte (one byte per cell on boards of more than 15 digits) and the
+ * number of solutions, up to 2. The packed puzzle is compared on every hit,
+ * so a fingerprint collision is a miss, never a wrong answer.
+ * The cache is split into SEGMENTS least recently used maps, each guarded
+ * by its own monitor; a puzzle's segment follows from its fingerprint.
+ * Lookups probe a segment with a key reused under its monitor, so a hit
+ * does not allocate.
+ */
+public class SolutionCache {
+    static final int SEGMENTS = 16;             /* independently locked LRU maps, power of two */
+    static final int UNKNOWN = -1;              /* not cached */
+    static final int UNSOLVABLE = 0;            /* the puzzle has no solution */
+    static final int SOLVED = 1;                /* the solution was unpacked */
+
+    private final Segment[] segments;           /* the LRU maps */
+    private final AtomicLong hits;              /* lookups answered from the cache */
+    private final AtomicLong misses;            /* lookups that were not */
+    private final AtomicLong evictions;         /* entries dropped to stay within the capacity */
+
+    /**
+     * Cached results of one puzzle, guarded by its own monitor.
+     */
+    private static class Entry {
+        final byte[] puzzle;    /* the packed puzzle, to tell colliding fingerprints apart */
+        byte[] solution;        /* packed solution, null when unsolvable or not computed */
+        boolean solved;         /* whether the solution was looked for */
+        int solutions;          /* solutions count up to 2, or UNKNOWN */
+
+        Entry(byte[] puzzle) {
+            this.puzzle = puzzle;
+            solutions = UNKNOWN;
+        }
+    }
+
+    /**
+     * Fingerprint of a puzzle, the map key. Keys in a map are never changed,
+     * only the probe key of a segment is set again for each lookup.
+     */
+    private static class Key {
+        private long high, low;         /* the 128 bits */
+
+        Key(long high, long low) {
+            this.high = high;
+            this.low = low;
+        }
+
+        Key set(long high, long low) {
+            this.high = high;
+            this.low = low;
+            return this;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Key && ((Key) other).high == high && ((Key) other).low == low;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (low ^ (low >>> 32));
+        }
+    }
+
+    /**
+     * One least recently used map.
+     */
+    private class Segment extends LinkedHashMap<Key, Entry> {
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;     /* entries kept */
+        private final Key probe;        /* lookup key, used under the segment's monitor */
+
+        Segment(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+            probe = new Key(0, 0);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+            if (size() <= capacity)
+                return false;
+            evictions.incrementAndGet();
+            return true;
+        }
+    }
+
+    /**
+     * SolutionCache class constructor.
+     * @param capacity maximum number of cached puzzles, spread over the segments.
+     */
+    public SolutionCache(int capacity) {
+        if (capacity < SEGMENTS)
+            throw new IllegalArgumentException("Capacity must be at least " + SEGMENTS + ": " + capacity);
+
+        segments = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; ++i)
+            segments[i] = new Segment(capacity / SEGMENTS);
+        hits = new AtomicLong();
+        misses = new AtomicLong();
+        evictions = new AtomicLong();
+    }
+
+    /**
+     * Looks the solution of a puzzle up, counting a hit or a miss.
+     * @param grid the puzzle, 0 for an empty cell; replaced by the solution when SOLVED.
+     * @return SOLVED, UNSOLVABLE, or UNKNOWN when not cached.
+     */
+    public int getSolution(int[] grid) {
+        Entry entry = find(grid);
+        int result = UNKNOWN;
+        if (entry != null)
+            synchronized (entry) {
+                if (entry.solved) {
+                    result = entry.solution == null ? UNSOLVABLE : SOLVED;
+                    if (entry.solution != null)
+                        unpack(entry.solution, grid);
+                }
+            }
+        (result == UNKNOWN ? misses : hits).incrementAndGet();
+        return result;
+    }
+
+    /**
+     * Looks the number of solutions of a puzzle up, counting a hit or a miss.
+     * @param grid the puzzle, 0 for an empty cell.
+     * @return solutions count up to 2, or UNKNOWN when not cached.
+     */
+    public int getSolutions(int[] grid) {
+        Entry entry = find(grid);
+        int result = UNKNOWN;
+        if (entry != null)
+            synchronized (entry) {
+                result = entry.solutions;
+            }
+        (result == UNKNOWN ? misses : hits).incrementAndGet();
+        return result;
+    }
+
+    /**
+     * Returns the entry of a puzzle, null when there is none.
+     */
+    private Entry find(int[] grid) {
+        long high = fingerprintHigh(grid), low = fingerprintLow(grid);
+        Segment segment = segments[(int) high & (SEGMENTS - 1)];
+        Entry entry;
+        synchronized (segment) {
+            entry = segment.get(segment.probe.set(high, low));
+        }
+        return entry != null && matches(entry.puzzle, grid) ? entry : null;
+    }
+
+    /**
+     * Caches the solution of a puzzle.
+     * @param grid the puzzle, 0 for an empty cell.
+     * @param solution the solved grid, or null when the puzzle is unsolvable.
+     */
+    public void putSolution(int[] grid, int[] solution) {
+        Entry entry = entry(grid);
+        synchronized (entry) {
+            entry.solution = solution == null ? null : pack(solution);
+            entry.solved = true;
+            if (solution == null)
+                entry.solutions = 0;
+        }
+    }
+
+    /**
+     * Caches the number of solutions of a puzzle.
+     * @param grid the puzzle, 0 for an empty cell.
+     * @param solutions solutions count up to 2.
+     */
+    public void putSolutions(int[] grid, int solutions) {
+        Entry entry = entry(grid);
+        synchronized (entry) {
+            entry.solutions = solutions;
+            if (solutions == 0)
+                entry.solved = true;
+        }
+    }
+
+    /**
+     * Returns the entry of a puzzle, adding an empty one when there is none
+     * or when a different puzzle has the same fingerprint.
+     */
+    private Entry entry(int[] grid) {
+        Key key = new Key(fingerprintHigh(grid), fingerprintLow(grid));
+        byte[] packed = pack(grid);
+        Segment segment = segments[(int) key.high & (SEGMENTS - 1)];
+        synchronized (segment) {
+            Entry entry = segment.get(key);
+            if (entry == null || !Arrays.equals(entry.puzzle, packed)) {
+                entry = new Entry(packed);
+                segment.put(key, entry);
+            }
+            return entry;
+        }
+    }
+
+    /**
+     * Returns the number of cached puzzles.
+     * @return entries count.
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments)
+            synchronized (segment) {
+                size += segment.size();
+            }
+        return size;
+    }
+
+    /**
+     * Returns the number of lookups answered from the cache.
+     * @return hits count.
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of lookups not answered from the cache.
+     * @return misses count.
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Returns the fraction of lookups answered from the cache.
+     * @return hit ratio from 0 to 1, 0 before any lookup.
+     */
+    public double getHitRate() {
+        long h = hits.get(), total = h + misses.get();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    /**
+     * Returns the number of entries dropped to stay within the capacity.
+     * @return evictions count.
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * Computes the high half of the 128-bit fingerprint of a grid: a 64-bit
+     * multiplicative hash finished by the murmur3 mixer.
+     */
+    private static long fingerprintHigh(int[] grid) {
+        long high = 0x9E3779B97F4A7C15L ^ grid.length;
+        for (int value : grid)
+            high = (high ^ value) * 0x100000001B3L;
+        return mix(high);
+    }
+
+    /**
+     * Computes the low half of the fingerprint, the same way with another
+     * seed and multiplier.
+     */
+    private static long fingerprintLow(int[] grid) {
+        long low = 0xC2B2AE3D27D4EB4FL ^ grid.length;
+        for (int value : grid)
+            low = (low + value + 1) * 0xFF51AFD7ED558CCDL;
+        return mix(low);
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        return h ^ (h >>> 33);
+    }
+
+    /**
+     * Packs cell values two per byte, or one per byte when they do not fit a nibble.
+     */
+    static byte[] pack(int[] grid) {
+        if (grid.length >= 256) {
+            byte[] packed = new byte[grid.length];
+            for (int cell = 0; cell < grid.length; ++cell)
+                packed[cell] = (byte) grid[cell];
+            return packed;
+        }
+
+        byte[] packed = new byte[(grid.length + 1) / 2];
+        for (int cell = 0; cell < grid.length; ++cell)
+            packed[cell >>> 1] |= (cell & 1) == 0 ? grid[cell] << 4 : grid[cell];
+        return packed;
+    }
+
+    /**
+     * Tells whether packed cell values are those of a grid, without packing it.
+     */
+    static boolean matches(byte[] packed, int[] grid) {
+        if (packed.length != (grid.length >= 256 ? grid.length : (grid.length + 1) / 2))
+            return false;
+        for (int cell = 0; cell < grid.length; ++cell) {
+            int value = grid.length >= 256 ? packed[cell] : (cell & 1) == 0 ? (packed[cell >>> 1] >>> 4) & 0xF : packed[cell >>> 1] & 0xF;
+            if (value != grid[cell])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Unpacks cell values packed by pack().
+     */
+    static void unpack(byte[] packed, int[] grid) {
+        if (grid.length >= 256) {
+            for (int cell = 0; cell < grid.length; ++cell)
+                grid[cell] = packed[cell];
+            return;
+        }
+
+        for (int cell = 0; cell < grid.length; ++cell)
+            grid[cell] = (cell & 1) == 0 ? (packed[cell >>> 1] >>> 4) & 0xF : packed[cell >>> 1] & 0xF;
+    }
+}
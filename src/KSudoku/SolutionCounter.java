@@ -0,0 +1,159 @@
+package KSudoku;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Counts solutions of a puzzle up to a limit on a fork-join pool.
+ * The first splitDepth levels of the search tree are expanded into tasks,
+ * one per candidate of the most constrained cell, and the subtrees below
+ * are counted by ordinary solvers. All tasks share the count, a cancel
+ * flag and the caller's Deadline, so every worker stops as soon as the
+ * limit is reached or the time is up.
+ * A SolutionCounter is thread safe, solvers are taken from a pool.
+ */
+public class SolutionCounter {
+    private final ForkJoinPool pool;            /* runs the tasks */
+    private final int splitDepth;               /* tree levels split into tasks, 0 to count sequentially */
+    private final EnginePool<Solver> solvers;   /* solvers for expanding and counting */
+
+    /**
+     * SolutionCounter class constructor.
+     * @param geometry shape of the boards to count.
+     * @param pool fork-join pool running the tasks.
+     * @param splitDepth number of search tree levels split into parallel tasks,
+     *                   0 to count on the calling thread only.
+     */
+    public SolutionCounter(Geometry geometry, ForkJoinPool pool, int splitDepth) {
+        if (splitDepth < 0)
+            throw new IllegalArgumentException("Split depth must not be negative: " + splitDepth);
+
+        this.pool = pool;
+        this.splitDepth = splitDepth;
+        solvers = new EnginePool<>(() -> new Solver(geometry));
+    }
+
+    /**
+     * Counts solutions of a puzzle, stopping as soon as the limit is reached.
+     * @param grid cell values in row-major order, 0 for an empty cell. Not modified.
+     * @param limit maximum number of solutions to look for, e.g. 2 to check uniqueness.
+     * @return number of solutions found, never more than limit.
+     */
+    public int count(int[] grid, int limit) {
+        return count(grid, limit, Deadline.NONE);
+    }
+
+    /**
+     * Counts solutions of a puzzle, stopping as soon as the limit is reached
+     * or the deadline is over. In the latter case deadline.wasInterrupted()
+     * is set and the count found so far is only a lower bound.
+     * @param grid cell values in row-major order, 0 for an empty cell. Not modified.
+     * @param limit maximum number of solutions to look for, e.g. 2 to check uniqueness.
+     * @param deadline time limit or cancellation token of the count.
+     * @return number of solutions found, never more than limit.
+     */
+    public int count(int[] grid, int limit, Deadline deadline) {
+        if (limit < 1)
+            return 0;
+
+        Search search = new Search(limit, deadline);
+        if (splitDepth == 0)
+            new Branch(search, grid.clone(), 0).compute();
+        else
+            pool.invoke(new Branch(search, grid.clone(), 0));
+        return Math.min(search.found.get(), limit);
+    }
+
+    /**
+     * State shared by all tasks of one count.
+     */
+    private static class Search {
+        final int limit;                /* solutions wanted */
+        final AtomicInteger found;      /* solutions found so far */
+        final AtomicBoolean done;       /* set when the limit is reached */
+        final Deadline deadline;        /* the caller's time limit */
+
+        Search(int limit, Deadline deadline) {
+            this.limit = limit;
+            this.deadline = deadline;
+            found = new AtomicInteger();
+            done = new AtomicBoolean();
+        }
+
+        void add(int solutions) {
+            if (solutions > 0 && found.addAndGet(solutions) >= limit)
+                done.set(true);
+        }
+    }
+
+    /**
+     * Counts the solutions below one node of the search tree.
+     */
+    private class Branch extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Search search;    /* the count this task belongs to */
+        private final int[] grid;       /* the node: givens plus the digits branched on */
+        private final int depth;        /* level of the node */
+
+        Branch(Search search, int[] grid, int depth) {
+            this.search = search;
+            this.grid = grid;
+            this.depth = depth;
+        }
+
+        @Override
+        protected void compute() {
+            if (search.done.get() || search.deadline.poll())
+                return;
+
+            Solver solver = solvers.take();
+            int cell;
+            long candidates;
+            try {
+                if (depth >= splitDepth) {
+                    int wanted = search.limit - search.found.get();
+                    if (wanted <= 0)
+                        return;
+
+                    solver.setCancelFlag(search.done);
+                    solver.setDeadline(search.deadline);
+                    try {
+                        search.add(solver.countSolutions(grid, wanted));
+                    } finally {
+                        solver.setCancelFlag(null);
+                        solver.setDeadline(Deadline.NONE);
+                    }
+                    return;
+                }
+
+                cell = solver.expand(grid);
+                candidates = solver.getBranchCandidates();
+            } finally {
+                solvers.give(solver);
+            }
+
+            if (cell == Solver.CONTRADICTION)
+                return;
+            if (cell == Solver.SOLVED) {
+                search.add(1);
+                return;
+            }
+
+            List<Branch> children = new ArrayList<>(Long.bitCount(candidates));
+            while (candidates != 0) {
+                long bit = candidates & -candidates;
+                candidates ^= bit;
+
+                int[] child = grid.clone();
+                child[cell] = Long.numberOfTrailingZeros(bit) + 1;
+                children.add(new Branch(search, child, depth + 1));
+            }
+            invokeAll(children);
+        }
+    }
+}
@@ -0,0 +1,419 @@
+package KSudoku;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Constraint propagation solver used by the KSudoku Model.
+ * Candidates are kept as bitmasks of digits already placed in each
+ * unit of the Geometry (rows, columns, regions and the units of variant
+ * rules), one bit per digit in a long, so boards up to 25x25 are
+ * supported. The search propagates naked and hidden singles and then
+ * branches on the most constrained cell.
+ * A search may be bounded by a node limit and by a Deadline; when it stops
+ * short, the deductions made before the first branch are still available.
+ * All working memory is allocated once in the constructor, so solving
+ * does not allocate. A Solver instance is not thread safe.
+ */
+public class Solver {
+    static final int SOLVED = -1;           /* expand(): the grid got solved */
+    static final int CONTRADICTION = -2;    /* expand(): the grid has no solution */
+    private static final int DEADLINE_MASK = 63;    /* the deadline is polled at the first branch and every 64 after */
+
+    private final Geometry geometry;    /* board shape */
+    private final int size;             /* digits in a unit */
+    private final int cells;            /* cells in the grid */
+    private final int units;            /* rows, columns, regions and variant units */
+    private final long all;             /* mask with all digits set */
+    private final int[] unitCells;      /* geometry tables, copied to fields for speed */
+    private final int[] cellUnits;
+    private final int[] cellUnitsStart;
+    private final boolean threeUnits;   /* every cell is in exactly 3 units, at [c * 3, c * 3 + 3) */
+
+    private int[] cellStack;            /* per depth: cell values */
+    private long[] unitStack;           /* per depth: digits used in each unit */
+    private int[] solution;             /* first solution found by the last search */
+    private int solutionsFound;         /* solutions found by the current search */
+    private int solutionsLimit;         /* the search stops after this many solutions */
+    private Random random;              /* when not null, branches are tried in random order */
+
+    private long nodeLimit;             /* the search gives up after this many branches */
+    private long nodes;                 /* branches taken by the current search */
+    private boolean aborted;            /* whether the last search hit the node limit, was cancelled or ran out of time */
+    private AtomicBoolean cancelFlag;   /* set by another thread to stop the search, may be null */
+    private Deadline deadline;          /* time limit and cancellation token of the searches */
+    private long branchCandidates;      /* candidates of the cell chosen by expand() */
+
+    /**
+     * Solver class default constructor, for the classic 9x9 board.
+     */
+    public Solver() {
+        this(Geometry.CLASSIC);
+    }
+
+    /**
+     * Solver class constructor.
+     * Allocates the search stack.
+     * @param geometry shape of the boards to solve.
+     */
+    public Solver(Geometry geometry) {
+        this.geometry = geometry;
+        size = geometry.size;
+        cells = geometry.cells;
+        units = geometry.units;
+        all = geometry.all;
+        unitCells = geometry.unitCells;
+        cellUnits = geometry.cellUnits;
+        cellUnitsStart = geometry.cellUnitsStart;
+        threeUnits = cellUnits.length == 3 * cells;
+
+        /* Every level places at least one digit. */
+        int maxDepth = cells + 1;
+        cellStack = new int[cells * maxDepth];
+        unitStack = new long[units * maxDepth];
+        solution = new int[cells];
+        nodeLimit = Long.MAX_VALUE;
+        deadline = Deadline.NONE;
+    }
+
+    /**
+     * Returns the shape of the boards this solver works on.
+     * @return the geometry.
+     */
+    public Geometry getGeometry() {
+        return geometry;
+    }
+
+    /**
+     * Limits the number of branches a single search may take.
+     * A search hitting the limit stops and reports wasAborted().
+     * @param limit maximum number of branches, Long.MAX_VALUE for no limit.
+     */
+    public void setNodeLimit(long limit) {
+        nodeLimit = limit;
+    }
+
+    /**
+     * Makes searches stop as soon as a flag gets set, e.g. by another
+     * thread that already has the answer. A stopped search reports wasAborted().
+     * @param flag the flag, checked at every branch, or null for none.
+     */
+    void setCancelFlag(AtomicBoolean flag) {
+        cancelFlag = flag;
+    }
+
+    /**
+     * Bounds the following searches in time, or lets them be cancelled.
+     * A search running past the deadline stops and reports wasAborted(),
+     * getDeductions() then gives the state it reached.
+     * @param deadline the deadline, Deadline.NONE for none.
+     */
+    public void setDeadline(Deadline deadline) {
+        this.deadline = deadline;
+    }
+
+    /**
+     * Tells whether the last search stopped because of the node limit, the cancel flag or the deadline.
+     * Its result is then incomplete: no solution or too few solutions.
+     * @return true if the last search was aborted.
+     */
+    public boolean wasAborted() {
+        return aborted;
+    }
+
+    /**
+     * Copies the cells the last search deduced before its first branch: the
+     * givens and the singles they force. All of them hold in every solution,
+     * so this is the partial result of an aborted search.
+     * @param grid receives cell values in row-major order, 0 for a cell left open.
+     */
+    public void getDeductions(int[] grid) {
+        System.arraycopy(cellStack, 0, grid, 0, cells);
+    }
+
+    /**
+     * Solves a puzzle in place.
+     * @param grid cell values in row-major order, 0 for an empty cell.
+     *             Filled with the solution when one exists.
+     * @return true if the puzzle has a solution.
+     */
+    public boolean solve(int[] grid) {
+        return run(grid, 1, null) > 0;
+    }
+
+    /**
+     * Counts solutions of a puzzle, stopping as soon as the limit is reached.
+     * @param grid cell values in row-major order, 0 for an empty cell. Not modified.
+     * @param limit maximum number of solutions to look for.
+     * @return number of solutions found, never more than limit.
+     */
+    public int countSolutions(int[] grid, int limit) {
+        solutionsFound = 0;
+        aborted = false;
+        if (limit < 1 || !load(grid))
+            return 0;
+
+        solutionsLimit = limit;
+        random = null;
+        nodes = 0;
+        search(0);
+        return solutionsFound;
+    }
+
+    /**
+     * Solves a puzzle in place, trying digits in random order.
+     * Solving an empty grid gives a random complete grid.
+     * @param grid cell values in row-major order, 0 for an empty cell.
+     * @param rand random numbers generator deciding the branch order.
+     * @return true if the puzzle has a solution.
+     */
+    public boolean solveRandom(int[] grid, Random rand) {
+        return run(grid, 1, rand) > 0;
+    }
+
+    /**
+     * Tells whether the digits of a grid are in range and no two of them
+     * collide in a unit. Does not search.
+     * @param grid cell values in row-major order, 0 for an empty cell. Not modified.
+     * @return true if the grid is consistent.
+     */
+    public boolean isConsistent(int[] grid) {
+        return load(grid);
+    }
+
+    /**
+     * Loads a grid, places its singles and chooses the cell to branch on,
+     * for callers splitting the search tree themselves.
+     * @param grid cell values in row-major order, 0 for an empty cell.
+     *             Replaced by the grid with the singles placed.
+     * @return the empty cell with the fewest candidates, whose candidates are
+     *         then given by getBranchCandidates(), or SOLVED when no empty cell
+     *         is left, or CONTRADICTION when the grid has no solution.
+     */
+    int expand(int[] grid) {
+        if (!load(grid) || !propagate(0, 0))
+            return CONTRADICTION;
+
+        System.arraycopy(cellStack, 0, grid, 0, cells);
+        int cell = chooseCell(0, 0);
+        if (cell < 0)
+            return SOLVED;
+
+        branchCandidates = candidates(0, cell);
+        return cell;
+    }
+
+    /**
+     * Returns the candidates of the cell chosen by the last expand().
+     * @return mask with bit d - 1 set for candidate d.
+     */
+    long getBranchCandidates() {
+        return branchCandidates;
+    }
+
+    /**
+     * Runs a search and copies the first solution back to the grid.
+     */
+    private int run(int[] grid, int limit, Random rand) {
+        solutionsFound = 0;
+        aborted = false;
+        if (!load(grid))
+            return 0;
+
+        solutionsLimit = limit;
+        random = rand;
+        nodes = 0;
+        search(0);
+        random = null;
+
+        if (solutionsFound > 0)
+            System.arraycopy(solution, 0, grid, 0, cells);
+        return solutionsFound;
+    }
+
+    /**
+     * Copies the givens to the bottom of the stack.
+     * @return false if the givens are out of range or collide with each other.
+     */
+    private boolean load(int[] grid) {
+        for (int i = 0; i < cells; ++i)
+            cellStack[i] = 0;
+        for (int i = 0; i < units; ++i)
+            unitStack[i] = 0;
+
+        for (int cell = 0; cell < cells; ++cell) {
+            int value = grid[cell];
+            if (value == 0)
+                continue;
+            if (value < 0 || value > size || !place(0, 0, cell, 1L << (value - 1)))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Depth first search. Each level works on its own copy of the state.
+     */
+    private void search(int depth) {
+        int base = depth * cells;
+        int unitBase = depth * units;
+
+        if (!propagate(base, unitBase))
+            return;
+
+        int bestCell = chooseCell(base, unitBase);
+
+        /* No empty cells left, the grid is solved. */
+        if (bestCell < 0) {
+            if (solutionsFound++ == 0)
+                System.arraycopy(cellStack, base, solution, 0, cells);
+            return;
+        }
+
+        long cand = candidates(unitBase, bestCell);
+        int next = base + cells, nextUnits = unitBase + units;
+        int shift = random == null ? 0 : random.nextInt(size);
+
+        for (int k = 0; k < size; ++k) {
+            long bit = 1L << ((k + shift) % size);
+            if ((cand & bit) == 0)
+                continue;
+
+            if (++nodes > nodeLimit || (cancelFlag != null && cancelFlag.get())
+                    || ((nodes & DEADLINE_MASK) == 1 && deadline.poll())) {
+                aborted = true;
+                return;
+            }
+
+            System.arraycopy(cellStack, base, cellStack, next, cells);
+            System.arraycopy(unitStack, unitBase, unitStack, nextUnits, units);
+            place(next, nextUnits, bestCell, bit);
+            search(depth + 1);
+
+            if (solutionsFound >= solutionsLimit || aborted)
+                return;
+        }
+    }
+
+    /**
+     * Returns the empty cell with the fewest candidates, or -1 if there is none.
+     */
+    private int chooseCell(int base, int unitBase) {
+        int bestCell = -1, bestCount = size + 1;
+        for (int cell = 0; cell < cells && bestCount > 2; ++cell)
+            if (cellStack[base + cell] == 0) {
+                int count = Long.bitCount(candidates(unitBase, cell));
+                if (count < bestCount) {
+                    bestCount = count;
+                    bestCell = cell;
+                }
+            }
+        return bestCell;
+    }
+
+    /**
+     * Places naked and hidden singles until nothing changes.
+     * @return false if a contradiction was found.
+     */
+    private boolean propagate(int base, int unitBase) {
+        boolean changed = true;
+
+        while (changed) {
+            changed = false;
+
+            /* Naked singles: cells with one candidate left. */
+            for (int cell = 0; cell < cells; ++cell)
+                if (cellStack[base + cell] == 0) {
+                    long cand = candidates(unitBase, cell);
+                    if (cand == 0)
+                        return false;
+                    if ((cand & (cand - 1)) == 0) {
+                        if (!place(base, unitBase, cell, cand))
+                            return false;
+                        changed = true;
+                    }
+                }
+
+            /* Hidden singles: digits with one place left in a unit. */
+            for (int unit = 0; unit < units; ++unit) {
+                long once = 0, twice = 0;
+                int first = unit * size;
+
+                for (int k = 0; k < size; ++k) {
+                    int cell = unitCells[first + k];
+                    if (cellStack[base + cell] == 0) {
+                        long cand = candidates(unitBase, cell);
+                        twice |= once & cand;
+                        once |= cand;
+                    }
+                }
+
+                if ((once | unitStack[unitBase + unit]) != all)
+                    return false;
+
+                long hidden = once & ~twice;
+                while (hidden != 0) {
+                    long bit = hidden & -hidden;
+                    hidden ^= bit;
+
+                    for (int k = 0; k < size; ++k) {
+                        int cell = unitCells[first + k];
+                        if (cellStack[base + cell] == 0 && (candidates(unitBase, cell) & bit) != 0) {
+                            if (!place(base, unitBase, cell, bit))
+                                return false;
+                            changed = true;
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the mask of digits that can still go to an empty cell.
+     */
+    private long candidates(int unitBase, int cell) {
+        if (threeUnits) {
+            int c = cell * 3;
+            return all & ~(unitStack[unitBase + cellUnits[c]]
+                    | unitStack[unitBase + cellUnits[c + 1]]
+                    | unitStack[unitBase + cellUnits[c + 2]]);
+        }
+
+        long used = 0;
+        for (int k = cellUnitsStart[cell], end = cellUnitsStart[cell + 1]; k < end; ++k)
+            used |= unitStack[unitBase + cellUnits[k]];
+        return all & ~used;
+    }
+
+    /**
+     * Puts a digit to a cell and marks it as used in the cell's units.
+     * @return false if the digit is already used in one of the units.
+     */
+    private boolean place(int base, int unitBase, int cell, long bit) {
+        if (threeUnits) {
+            int c = cell * 3;
+            int row = unitBase + cellUnits[c], col = unitBase + cellUnits[c + 1], region = unitBase + cellUnits[c + 2];
+            if (((unitStack[row] | unitStack[col] | unitStack[region]) & bit) != 0)
+                return false;
+
+            cellStack[base + cell] = Long.numberOfTrailingZeros(bit) + 1;
+            unitStack[row] |= bit;
+            unitStack[col] |= bit;
+            unitStack[region] |= bit;
+            return true;
+        }
+
+        int first = cellUnitsStart[cell], end = cellUnitsStart[cell + 1];
+        for (int k = first; k < end; ++k)
+            if ((unitStack[unitBase + cellUnits[k]] & bit) != 0)
+                return false;
+
+        cellStack[base + cell] = Long.numberOfTrailingZeros(bit) + 1;
+        for (int k = first; k < end; ++k)
+            unitStack[unitBase + cellUnits[k]] |= bit;
+        return true;
+    }
+}
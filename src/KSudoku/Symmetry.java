@@ -0,0 +1,130 @@
+package KSudoku;
+
+import java.util.Random;
+
+/**
+ * Random validity-preserving transformations of puzzles: digit relabeling,
+ * row and column permutations within bands and stacks, band and stack
+ * permutations, and transposition, the same symmetries Canonicalizer
+ * removes. The solution and the givens are transformed together, so the
+ * result is a valid puzzle with a unique solution and the same rating.
+ * All permutations of boxSize lines are precomputed; a transformation
+ * picks some of them, builds the row, column and digit maps, and moves
+ * every cell in a single pass. Nothing is allocated besides the new
+ * puzzle's arrays. A Symmetry is thread safe, the maps are per thread.
+ */
+public class Symmetry {
+    private final Geometry geometry;    /* board shape */
+    private final int[] perms;          /* permutation p of 0 .. boxSize - 1 lists p * boxSize .. p * boxSize + boxSize - 1 */
+    private final int permCount;        /* boxSize! */
+    private final ThreadLocal<int[]> maps;  /* row map, column map and digit map, 3N + 1 entries */
+
+    /**
+     * Symmetry class constructor. Precomputes the line permutations.
+     * @param geometry shape of the boards to transform.
+     */
+    public Symmetry(Geometry geometry) {
+        this.geometry = geometry;
+        int order = geometry.boxSize;
+
+        int count = 1;
+        for (int k = 2; k <= order; ++k)
+            count *= k;
+        permCount = count;
+        perms = new int[count * order];
+
+        int[] perm = new int[order];
+        for (int k = 0; k < order; ++k)
+            perm[k] = k;
+        for (int p = 0; p < count; ++p) {
+            System.arraycopy(perm, 0, perms, p * order, order);
+            nextPermutation(perm);
+        }
+
+        maps = ThreadLocal.withInitial(() -> new int[3 * geometry.size + 1]);
+    }
+
+    /**
+     * Transforms a puzzle by a random symmetry.
+     * @param puzzle puzzle of this Symmetry's geometry, not modified.
+     * @param rand random numbers generator.
+     * @return the transformed puzzle.
+     */
+    public Puzzle apply(Puzzle puzzle, Random rand) {
+        int size = geometry.size;
+        int[] map = maps.get();
+        fillLineMap(map, 0, rand);
+        fillLineMap(map, size, rand);
+
+        /* Digit relabeling, a Fisher-Yates shuffle of 1 .. N; 0 stays 0. */
+        int digits = 2 * size;
+        for (int d = 0; d <= size; ++d)
+            map[digits + d] = d;
+        for (int d = size; d > 1; --d) {
+            int other = 1 + rand.nextInt(d);
+            int swap = map[digits + d];
+            map[digits + d] = map[digits + other];
+            map[digits + other] = swap;
+        }
+
+        /* Transposition swaps the roles of the target row and column. */
+        int rowStride = size, colStride = 1;
+        if (rand.nextBoolean()) {
+            rowStride = 1;
+            colStride = size;
+        }
+
+        byte[] solution = new byte[geometry.cells];
+        long[] givens = new long[(geometry.cells + 63) >>> 6];
+        for (int row = 0, cell = 0; row < size; ++row) {
+            int rowBase = map[row] * rowStride;
+            for (int col = 0; col < size; ++col, ++cell) {
+                int target = rowBase + map[size + col] * colStride;
+                solution[target] = (byte) map[digits + puzzle.get(cell)];
+                if (puzzle.isGiven(cell))
+                    givens[target >>> 6] |= 1L << target;
+            }
+        }
+        return new Puzzle(geometry, solution, givens, puzzle.getCachedRating());
+    }
+
+    /**
+     * Fills a random line map: a band order, then an order of the lines within each band.
+     * @param map array to fill.
+     * @param offset first entry to fill; N entries are filled.
+     * @param rand random numbers generator.
+     */
+    private void fillLineMap(int[] map, int offset, Random rand) {
+        int order = geometry.boxSize;
+        int bands = rand.nextInt(permCount) * order;
+        for (int band = 0; band < order; ++band) {
+            int lines = rand.nextInt(permCount) * order;
+            int base = perms[bands + band] * order;
+            for (int k = 0; k < order; ++k)
+                map[offset + band * order + k] = base + perms[lines + k];
+        }
+    }
+
+    /**
+     * Turns a permutation into the next one in lexicographic order,
+     * the last one into the first.
+     */
+    private static void nextPermutation(int[] perm) {
+        int i = perm.length - 2;
+        while (i >= 0 && perm[i] >= perm[i + 1])
+            --i;
+        if (i >= 0) {
+            int j = perm.length - 1;
+            while (perm[j] <= perm[i])
+                --j;
+            int swap = perm[i];
+            perm[i] = perm[j];
+            perm[j] = swap;
+        }
+        for (int a = i + 1, b = perm.length - 1; a < b; ++a, --b) {
+            int swap = perm[a];
+            perm[a] = perm[b];
+            perm[b] = swap;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package KSudoku;
+
+/**
+ * Human solving techniques known to the Rater, in order of increasing cost.
+ * The declaration order is the order the Rater tries them in.
+ */
+public enum Technique {
+    HIDDEN_SINGLE(Difficulty.EASY),         /* digit has one place left in a unit */
+    NAKED_SINGLE(Difficulty.EASY),          /* cell has one candidate left */
+    POINTING(Difficulty.MEDIUM),            /* digit of a box is confined to one row or column */
+    CLAIMING(Difficulty.MEDIUM),            /* digit of a row or column is confined to one box */
+    NAKED_PAIR(Difficulty.MEDIUM),          /* two cells of a unit share the same two candidates */
+    HIDDEN_PAIR(Difficulty.MEDIUM),         /* two digits of a unit are confined to the same two cells */
+    NAKED_TRIPLE(Difficulty.HARD),          /* three cells of a unit hold only three candidates */
+    HIDDEN_TRIPLE(Difficulty.HARD),         /* three digits of a unit are confined to three cells */
+    X_WING(Difficulty.HARD),                /* digit confined to the same two columns in two rows, or vice versa */
+    SWORDFISH(Difficulty.HARD),             /* the same with three rows and columns */
+    GUESS(Difficulty.EXPERT);               /* none of the above makes progress */
+
+    private final Difficulty difficulty;    /* difficulty level of puzzles needing this technique */
+
+    Technique(Difficulty difficulty) {
+        this.difficulty = difficulty;
+    }
+
+    /**
+     * Returns the difficulty level of puzzles whose hardest technique is this one.
+     * @return the difficulty.
+     */
+    public Difficulty getDifficulty() {
+        return difficulty;
+    }
+}
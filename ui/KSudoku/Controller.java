@@ -0,0 +1,459 @@
+package KSudoku;
+
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import java.awt.*;
+import java.awt.event.*;
+
+/**
+ * Controller class from the MVC pattern in KSudoku.
+ * Reacts to player's actions, i.e. adds listeners to the View components
+ * and takes proper action when and event occurs.
+ * Takes new solutions from the Model. Engine calls made on the event
+ * thread get a deadline, read in milliseconds from the
+ * ksudoku.ui.budgetMillis system property, so the UI never stalls longer.
+ */
+public class Controller {
+    private static final long BUDGET_NANOS =     /* longest engine call on the event thread */
+            Long.getLong("ksudoku.ui.budgetMillis", 100) * 1_000_000;
+
+    private View theView;                       /* the KSudoku View */
+    private Geometry geometry;                  /* shape of the board */
+    private Model theModel;                     /* the KSudoku Model */
+    private char[][] correctTable;              /* properly filled table */
+    private Puzzle puzzle;                      /* the puzzle being played */
+    private BoardState board;                   /* digits, givens and conflicts of the board */
+    private GameJournal journal;                /* autosave and undo history of the game */
+    private ButtonListener buttonListener;      /* View's buttons listener */
+    private ColorListener colorListener;        /* View's color check box listener */
+    private FieldListener[][] gridListeners;    /* View's table fields listener */
+
+    private int[] collisionMarks;               /* fields currently colored red as collisions */
+    private int collisionMarksCount;            /* number of used collisionMarks entries */
+
+    private boolean colorFields;                /* is color fields option currently turned on */
+    private boolean recordMoves;                /* are field edits the player's moves, to be journaled */
+
+    /**
+     * Controller class default constructor.
+     * Adds components listeners in the given View, gets a new solution
+     * from the given Model and shares it with the View.
+     * Moves are kept for undo and redo, but not saved.
+     * @param view  the KSudoku View reference
+     * @param model the KSudoku Model reference
+     */
+    public Controller (View view, Model model){
+        this(view, model, new GameJournal(null, model.getGeometry()));
+    }
+
+    /**
+     * Controller class constructor.
+     * Adds components listeners in the given View and resumes the game
+     * saved in the journal, or gets a new solution from the given Model.
+     * Every move is saved in the journal, and the journal is closed when
+     * the player closes the frame.
+     * @param view  the KSudoku View reference
+     * @param model the KSudoku Model reference
+     * @param journal the game journal, saving to a directory.
+     */
+    public Controller (View view, Model model, GameJournal journal){
+        theView = view;
+        theModel = model;
+        this.journal = journal;
+        geometry = model.getGeometry();
+        int size = geometry.size;
+        correctTable = new char[size][size];
+        board = new BoardState(geometry);
+        collisionMarks = new int[geometry.maxPeers];
+
+        /* Create and assign listeners. */
+        buttonListener = new ButtonListener();
+        colorListener = new ColorListener();
+        theView.addCheckListener(buttonListener);
+        theView.addResetListener(buttonListener);
+        theView.addHintListener(buttonListener);
+        theView.addUndoListener(buttonListener);
+        theView.addRedoListener(buttonListener);
+        theView.addColorListener(colorListener);
+        theView.addCloseListener(new CloseListener());
+
+        gridListeners = new FieldListener[size][size];
+        for (int i = 0; i < size; ++i)
+            for (int j = 0; j < size; ++j){
+                gridListeners[i][j] = new FieldListener(i,j);
+                theView.addFieldListener(i,j,gridListeners[i][j]);
+            }
+
+        /* Empty fields show their pencil marks as tool tips. */
+        theView.setToolTipSource(this::candidatesText);
+
+        /* Resume the saved game, or get a new solution; send it to the view. */
+        Puzzle saved = journal.restore();
+        if (saved != null)
+            resumeGame(saved);
+        else
+            startNewGame();
+
+        /* Initially, the color fields option is turned on. */
+        colorFields = true;
+    }
+
+
+    /**
+     * View's color check box item listener class, extends ItemListener.
+     * Sets/resets the colorFields variable when the check box selection changes.
+     */
+    class ColorListener implements ItemListener {
+        @Override
+        public void itemStateChanged(ItemEvent e) {
+            if (e.getStateChange() == ItemEvent.DESELECTED) {
+                colorFields = false;
+
+                theView.beginUpdate();
+                try {
+                    for (int i = 0; i < geometry.size; ++i)
+                        for (int j = 0; j < geometry.size; ++j)
+                            theView.setFieldBackground(i, j, theView.getDefaultFieldBackground(i, j));
+                } finally {
+                    theView.endUpdate();
+                }
+                collisionMarksCount = 0;
+            }
+            else
+                colorFields = true;
+        }
+    }
+
+    /**
+     * Frame's window listener class.
+     * Saves the game and exits when the player closes the frame.
+     */
+    class CloseListener extends WindowAdapter {
+        @Override
+        public void windowClosing(WindowEvent e) {
+            journal.close();
+            System.exit(0);
+        }
+    }
+
+    /**
+     * View's button's listener class.
+     * Takes proper action when the player clicks a specific button.
+     */
+    class ButtonListener implements ActionListener {
+        @Override
+        public void actionPerformed(ActionEvent e) {
+
+            /* The new game generation button was clicked. */
+            if ( ( ((JButton) e.getSource()).getText() ).equals("Generate new game") ) {
+                startNewGame();
+            }
+            /* The hint button was clicked. */
+            else if ( ( ((JButton) e.getSource()).getText() ).equals("Hint") ) {
+                showHint();
+            }
+            /* The undo button was clicked. */
+            else if ( ( ((JButton) e.getSource()).getText() ).equals("Undo") ) {
+                int move = journal.undo();
+                if (move >= 0)
+                    putDigit(GameJournal.cellOf(move), GameJournal.oldDigitOf(move));
+            }
+            /* The redo button was clicked. */
+            else if ( ( ((JButton) e.getSource()).getText() ).equals("Redo") ) {
+                int move = journal.redo();
+                if (move >= 0)
+                    putDigit(GameJournal.cellOf(move), GameJournal.newDigitOf(move));
+            }
+            /* The correctness checking button was clicked. */
+            else{
+                long start = System.nanoTime();
+                Color colorToSet;
+
+                /* Color fields green when a digit provided by the player
+                 * matches the one from the proper solution. Color red when
+                 * the character is wrong. Don't color if no character in the field.
+                 */
+                int size = geometry.size;
+                theView.beginUpdate();
+                try {
+                    for (int cell = 0; cell < geometry.cells; ++cell)
+                        if (!board.isGiven(cell)) {
+                            if (board.get(cell) != 0 || board.isInvalid(cell)) {
+                                colorToSet = board.isCorrect(cell, puzzle) ? Color.GREEN : Color.RED;
+                                if (colorFields)
+                                    theView.setFieldBackground(cell / size, cell % size, colorToSet);
+                            }
+                        }
+                } finally {
+                    theView.endUpdate();
+                }
+                boolean wholeCorrect = board.isSolved(puzzle);
+                Metrics.CHECK.record(System.nanoTime() - start);
+
+                /* The game state comes from the board, the colors only show it. */
+                if (wholeCorrect)
+                    theView.filledCorrectly();
+                else
+                    /* If coloring is off, let the player know that there are mistakes. */
+                    if (!colorFields)
+                        theView.displayMessage("Incorrect!");
+            }
+        }
+    }
+
+    /**
+     * Contains a document listener and a focus listener for a single text field
+     * in the sudoku grid.
+     */
+    class FieldListener {
+        private int x, y;               /* field's coordinates in the table */
+        private int unrecordedOld = -1; /* digit before the edits not journaled yet, -1 when none */
+        DocumentListener listener;      /* field's document listener */
+        FocusListener focusListener;    /* field's focus listener */
+
+        /**
+         * Default constructor. Contains overrided methods definitions.
+         * @param _x field x coordinate.
+         * @param _y field y coordinate.
+         */
+        FieldListener(int _x, int _y){
+            x = _x;
+            y = _y;
+
+            /* Create and define focus listener. */
+            focusListener = new FocusListener() {
+                @Override
+                public void focusGained(FocusEvent e) {}
+
+                /* Set default color for the field, do so with
+                 * all potentially colliding fields (they may be colored red).
+                 */
+                @Override
+                public void focusLost(FocusEvent e) {
+                    theView.beginUpdate();
+                    try {
+                        clearCollisionMarks();
+                        theView.setFieldBackground(x,y,Color.WHITE);
+                    } finally {
+                        theView.endUpdate();
+                    }
+                }
+            };
+
+            /* Create and define the document listener. */
+            listener = new DocumentListener() {
+                @Override
+                public void insertUpdate(DocumentEvent e) {
+                    this.changedUpdate(e);
+                }
+
+                @Override
+                public void removeUpdate(DocumentEvent e) {
+                    this.changedUpdate(e);
+                }
+
+                @Override
+                public void changedUpdate(DocumentEvent e) {
+                    long start = System.nanoTime();
+                    int cell = x * geometry.size + y;
+                    int digit = theView.getFieldDigit(x, y);
+
+                    /* Keep the board up to date even when coloring is off,
+                     * and journal the player's moves. A replacement of the
+                     * text fires a removal and an insertion, so the move is
+                     * journaled from the final state, once the event is over. */
+                    int old = board.get(cell);
+                    board.set(cell, digit);
+                    if (recordMoves && unrecordedOld < 0) {
+                        unrecordedOld = old;
+                        if (SwingUtilities.isEventDispatchThread())
+                            SwingUtilities.invokeLater(FieldListener.this::recordMove);
+                        else
+                            recordMove();
+                    }
+
+                    /* All color changes of one edit are repainted at once. */
+                    if (colorFields) {
+                        theView.beginUpdate();
+                        try {
+                            colorField(cell, digit);
+                        } finally {
+                            theView.endUpdate();
+                        }
+                    }
+                    Metrics.KEYSTROKE.record(System.nanoTime() - start);
+                }
+            };
+        }
+
+        /**
+         * Journals the edits of the field since the last move, as one move.
+         */
+        private void recordMove() {
+            int cell = x * geometry.size + y;
+            if (board.get(cell) != unrecordedOld)
+                journal.record(cell, unrecordedOld, board.get(cell));
+            unrecordedOld = -1;
+        }
+
+        /**
+         * Colors the field after an edit, and its collisions.
+         * @param cell field's cell index.
+         * @param digit the field's new digit, 0 when empty, -1 when invalid.
+         */
+        private void colorField(int cell, int digit) {
+            /* Stop coloring previous collisions. */
+            clearCollisionMarks();
+
+            /* Always white when no character. */
+            if (digit == 0) {
+                theView.setFieldBackground(x, y, Color.WHITE);
+                return;
+            }
+            /* Always red when improper/more than one character. */
+            if (digit < 0) {
+                theView.setFieldBackground(x, y, Color.RED);
+                return;
+            }
+
+            /* Color the field green if contains one digit and no collisions found. */
+            if (!board.isConflict(cell)) {
+                theView.setFieldBackground(x, y, Color.GREEN);
+                return;
+            }
+
+            /* Color the field and colliding fields red. */
+            theView.setFieldBackground(x, y, Color.RED);
+            int size = geometry.size;
+            for (int k = geometry.peersStart[cell]; k < geometry.peersStart[cell + 1]; ++k) {
+                int peer = geometry.peers[k];
+                if (board.get(peer) == digit) {
+                    theView.setFieldBackground(peer / size, peer % size, Color.RED);
+                    collisionMarks[collisionMarksCount++] = peer;
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Takes a new puzzle from the Model, puts it on the board and shares it with the View.
+     */
+    private void startNewGame ()
+    {
+        /* The first game has to come, later ones keep the current game when late. */
+        char[][] solution = theModel.getNewSolution(puzzle == null ? Deadline.NONE : Deadline.in(BUDGET_NANOS));
+        if (solution == null) {
+            theView.displayMessage("No new game could be made in time, please try again.");
+            return;
+        }
+        correctTable = solution;
+        puzzle = theModel.getCurrentPuzzle();
+        journal.start(puzzle);
+        showGame();
+    }
+
+    /**
+     * Puts a saved puzzle and the player's digits on the board and shares them with the View.
+     * @param saved the puzzle of the saved game.
+     */
+    private void resumeGame (Puzzle saved)
+    {
+        correctTable = theModel.resume(saved);
+        puzzle = saved;
+        showGame();
+
+        int[] grid = journal.getGrid();
+        theView.beginUpdate();
+        try {
+            for (int cell = 0; cell < geometry.cells; ++cell)
+                if (!puzzle.isGiven(cell) && grid[cell] != 0)
+                    putDigit(cell, grid[cell]);
+        } finally {
+            theView.endUpdate();
+        }
+    }
+
+    /**
+     * Shares the current puzzle with the View, with an empty board.
+     */
+    private void showGame ()
+    {
+        board.reset(puzzle);
+        collisionMarksCount = 0;
+
+        boolean[][] visibilityArray = theModel.getVisibilityArray();
+        recordMoves = false;
+        theView.newGame(correctTable, visibilityArray);
+        recordMoves = true;
+    }
+
+    /**
+     * Puts a digit into a field, as undo, redo or a resumed game do,
+     * without journaling it as a move.
+     * @param cell field's cell index.
+     * @param digit digit to show, 0 for an empty field.
+     */
+    private void putDigit (int cell, int digit)
+    {
+        recordMoves = false;
+        theView.setFieldText(cell / geometry.size, cell % geometry.size,
+                digit == 0 ? "" : String.valueOf(geometry.symbol(digit)));
+        recordMoves = true;
+    }
+
+    /**
+     * Points the player to the next logical deduction: marks its field
+     * yellow and tells the digit and the technique leading to it.
+     */
+    private void showHint ()
+    {
+        Hint hint = theModel.getHint(board, Deadline.in(BUDGET_NANOS));
+        if (hint == null)
+            return;
+
+        int x = hint.getCell() / geometry.size, y = hint.getCell() % geometry.size;
+        if (colorFields)
+            theView.setFieldBackground(x, y, Color.YELLOW);
+        theView.displayMessage(geometry.symbol(hint.getDigit()) + " goes to row " + (x + 1)
+                + ", column " + (y + 1) + " ("
+                + hint.getTechnique().name().toLowerCase().replace('_', ' ') + ")");
+    }
+
+    /**
+     * Returns the pencil marks of an empty field, shown as its tool tip.
+     * @param x field x coordinate.
+     * @param y field y coordinate.
+     * @return candidates text, or null for a filled field.
+     */
+    private String candidatesText (int x, int y)
+    {
+        int cell = x * geometry.size + y;
+        if (board.get(cell) != 0 || board.isInvalid(cell))
+            return null;
+
+        long candidates = board.getCandidates(cell);
+        if (candidates == 0)
+            return "No candidates";
+
+        StringBuilder text = new StringBuilder("Candidates:");
+        for (int digit = 1; digit <= geometry.size; ++digit)
+            if ((candidates & (1L << (digit - 1))) != 0)
+                text.append(' ').append(geometry.symbol(digit));
+        return text.toString();
+    }
+
+    /**
+     * Sets the fields colored red as collisions back to their default colors.
+     */
+    private void clearCollisionMarks ()
+    {
+        for (int k = 0; k < collisionMarksCount; ++k) {
+            int x = collisionMarks[k] / geometry.size, y = collisionMarks[k] % geometry.size;
+            if (theView.getFieldBackground(x, y) == Color.RED)
+                theView.setFieldBackground(x, y, theView.getDefaultFieldBackground(x, y));
+        }
+        collisionMarksCount = 0;
+    }
+}
@@ -0,0 +1,25 @@
+package KSudoku;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * Entry point of the Swing UI, started by KSudoku.main when the UI classes
+ * are on the class path. The core classes never refer to this class, so
+ * they compile and run without the ui directory and without AWT.
+ */
+public class Gui {
+    private Gui() {}
+
+    /**
+     * Creates the View and the Controller of the MVC pattern for a Model.
+     * The game is saved in the .ksudoku directory of the user's home and
+     * resumed at the next start.
+     * @param model the KSudoku Model.
+     */
+    public static void start(Model model) {
+        Metrics.install(SwingUtilities::invokeLater);
+        View view = new View(model.getGeometry());
+        Controller controller = new Controller(view, model,
+                new GameJournal(GameJournal.defaultDirectory(), model.getGeometry()));
+    }
+}
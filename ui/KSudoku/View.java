@@ -0,0 +1,471 @@
+package KSudoku;
+
+import javax.swing.*;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Segment;
+import java.awt.*;
+import java.awt.event.ActionListener;
+import java.awt.event.MouseEvent;
+import java.awt.event.WindowListener;
+import java.util.function.BiFunction;
+
+
+
+/**
+ * View class from the MVC pattern in KSudoku.
+ * Displays sudoku grid and buttons.
+ * Contains package methods for Controller to add
+ * components' listeners and get/set components' features.
+ * Field changes made between beginUpdate() and endUpdate() are collected
+ * and applied together, with a single repaint of the grid.
+ */
+public class View {
+
+    private Geometry geometry;              /* shape of the board */
+    private JFrame frame;                   /* the application frame */
+    private JButton resetButton,            /* generate new game button */
+                checkButton,                /* check fields filling correctness button */
+                hintButton,                 /* show the next deduction button */
+                undoButton,                 /* take the last move back button */
+                redoButton;                 /* make the last undone move again button */
+    private JCheckBox colorBox;          /* on/off fields coloring check box */
+    private JPanel buttonsPanel,            /* panel for buttons and check box */
+                   wholeGrid;               /* sudoku grid */
+    private JPanel[] smallGrid;             /* N boxes of n x n fields, of which the grid consists */
+    private TableField[][] table;           /* fields for digits */
+    private Font SudokuFont;                /* custom font used for fields and buttons */
+    private Font fieldFont;                 /* font of the fields, smaller on large boards */
+    private Segment textSegment;            /* reused to read fields' text without copying */
+    private BiFunction<Integer, Integer, String> toolTipSource;    /* gives fields' tool tips, may be null */
+
+    private int updateDepth;                /* nesting level of beginUpdate() calls */
+    private Color[] pendingBackgrounds;     /* per cell, background to set at endUpdate(), null if none */
+    private int[] pendingCells;             /* cells having a pending background */
+    private int pendingCount;               /* number of used pendingCells entries */
+    private Rectangle dirtyArea;            /* grid area to repaint at endUpdate(), null if none */
+
+    /**
+     * View class default constructor, for the classic 9x9 board.
+     * Initializes graphical components and their fields.
+     */
+    public View() {
+        this(Geometry.CLASSIC, true);
+    }
+
+    /**
+     * View class constructor.
+     * Initializes graphical components and their fields.
+     * @param geometry shape of the board to display.
+     */
+    public View(Geometry geometry) {
+        this(geometry, true);
+    }
+
+    /**
+     * View class constructor.
+     * Initializes graphical components and their fields.
+     * Without the frame the View works in a headless environment,
+     * e.g. for benchmarks, and messages for the player are dropped.
+     * @param geometry shape of the board to display.
+     * @param showFrame whether to create and show the application frame.
+     */
+    View(Geometry geometry, boolean showFrame) {
+        this.geometry = geometry;
+        int size = geometry.size, boxSize = geometry.boxSize;
+
+        /* Custom font */
+        SudokuFont = new Font ("SudokuFont", Font.PLAIN, 18);
+        fieldFont = new Font ("SudokuFont", Font.PLAIN, Math.min(18, 288 / size));
+        textSegment = new Segment();
+        pendingBackgrounds = new Color[geometry.cells];
+        pendingCells = new int[geometry.cells];
+
+        /* Buttons, box and their panel */
+        resetButton = new JButton("Generate new game");
+        resetButton.setBackground(Color.YELLOW);
+        resetButton.setFont (SudokuFont);
+        checkButton = new JButton("Check correctness");
+        checkButton.setBackground(Color.YELLOW);
+        checkButton.setFont(SudokuFont);
+        hintButton = new JButton("Hint");
+        hintButton.setBackground(Color.YELLOW);
+        hintButton.setFont(SudokuFont);
+        undoButton = new JButton("Undo");
+        undoButton.setBackground(Color.YELLOW);
+        undoButton.setFont(SudokuFont);
+        redoButton = new JButton("Redo");
+        redoButton.setBackground(Color.YELLOW);
+        redoButton.setFont(SudokuFont);
+        colorBox = new JCheckBox("Color fields");
+        colorBox.setFont (SudokuFont);
+        colorBox.setSelected(true);
+
+        buttonsPanel = new JPanel();
+        buttonsPanel.add(resetButton);
+        buttonsPanel.add(checkButton);
+        buttonsPanel.add(hintButton);
+        buttonsPanel.add(undoButton);
+        buttonsPanel.add(redoButton);
+        buttonsPanel.add(colorBox);
+        buttonsPanel.setLayout(new GridLayout(6,1));
+
+        /* Sudoku grid, boxes added in row-major order */
+        table = new TableField[size][size];
+        wholeGrid = new JPanel(new GridLayout(boxSize, boxSize));
+        smallGrid = new JPanel[size];
+
+        for (int k = 0; k < size; ++k) {
+            smallGrid[k] = new JPanel(new GridLayout(boxSize, boxSize));
+            smallGrid[k].setBorder(BorderFactory.createLineBorder(Color.BLACK));
+            int min_i = (k / boxSize) * boxSize, min_j = (k % boxSize) * boxSize;
+            for (int i = min_i; i < min_i + boxSize; ++i)
+                for (int j = min_j; j < min_j + boxSize; ++j) {
+                    table[i][j] = new TableField(i, j);
+                    table[i][j].setFont(fieldFont);
+                    table[i][j].setHorizontalAlignment(JTextField.CENTER);
+                    smallGrid[k].add(table[i][j]);
+                }
+            wholeGrid.add(smallGrid[k]);
+        }
+
+        if (!showFrame)
+            return;
+
+        /* Main frame, closed by the close listener so the game can be saved first */
+        frame = new JFrame("KSudoku");
+        frame.setDefaultCloseOperation(JFrame.DO_NOTHING_ON_CLOSE);
+        frame.setSize(1024, 580);
+        frame.setLayout(new GridLayout());
+
+        /* Add panels to the frame, make everything visible */
+        frame.add(wholeGrid);
+        frame.add(buttonsPanel);
+        frame.setVisible(true);
+    }
+
+    /**
+     * Extends JTextField, adding field 'Color defaultColor' with setter and getter.
+     * Default color is different for initially visible digits and
+     * for digits which are to be filled by the player.
+     * Is used when a field is colored green/red and is to be colored
+     * back to the default color.
+     * The tool tip is asked from the tool tip source only when it is shown.
+     * Repaints requested during a batched update are merged into the grid's
+     * dirty area instead.
+     */
+    class TableField extends JTextField {
+        private Color defaultColor;
+        private int x, y;               /* field's coordinates in the table */
+
+        public TableField(int _x, int _y){
+            x = _x;
+            y = _y;
+        }
+
+        @Override
+        public String getToolTipText (MouseEvent e){
+            return toolTipSource == null ? null : toolTipSource.apply(x, y);
+        }
+
+        @Override
+        public void repaint (long tm, int _x, int _y, int width, int height){
+            if (updateDepth == 0) {
+                super.repaint(tm, _x, _y, width, height);
+                return;
+            }
+
+            Rectangle area = SwingUtilities.convertRectangle(this, new Rectangle(_x, _y, width, height), wholeGrid);
+            if (dirtyArea == null)
+                dirtyArea = area;
+            else
+                dirtyArea.add(area);
+        }
+
+        public void setDefaultColor (Color c){
+            defaultColor = c;
+        }
+        public Color getDefaultColor (){
+            return defaultColor;
+        }
+    }
+
+    /**
+     * Displays a text message for the player.
+     * @param msg message in String which is to be displayed.
+     */
+    void displayMessage (String msg){
+        if (frame != null)
+            JOptionPane.showMessageDialog(frame, msg);
+    }
+
+
+    /**
+     * Adds a new action listener for the new game generating button.
+     * @param resetListener action listener for the button.
+     */
+    void addResetListener (ActionListener resetListener){
+        resetButton.addActionListener(resetListener);
+    }
+
+    /**
+     * Adds a new action listener for the correctness checking button.
+     * @param checkListener action listener for the button.
+     */
+    void addCheckListener (ActionListener checkListener){
+        checkButton.addActionListener(checkListener);
+    }
+
+    /**
+     * Adds a new action listener for the hint button.
+     * @param hintListener action listener for the button.
+     */
+    void addHintListener (ActionListener hintListener){
+        hintButton.addActionListener(hintListener);
+    }
+
+    /**
+     * Adds a new action listener for the undo button.
+     * @param undoListener action listener for the button.
+     */
+    void addUndoListener (ActionListener undoListener){
+        undoButton.addActionListener(undoListener);
+    }
+
+    /**
+     * Adds a new action listener for the redo button.
+     * @param redoListener action listener for the button.
+     */
+    void addRedoListener (ActionListener redoListener){
+        redoButton.addActionListener(redoListener);
+    }
+
+    /**
+     * Adds a listener for the application frame, e.g. to save the game
+     * when the player closes it. The frame does not close by itself.
+     * @param closeListener window listener for the frame.
+     */
+    void addCloseListener (WindowListener closeListener){
+        if (frame != null)
+            frame.addWindowListener(closeListener);
+    }
+
+    /**
+     * Sets where the fields take their tool tips from, e.g. pencil marks.
+     * A tool tip is computed only when it is about to be shown.
+     * @param source gives the tool tip of the field at x, y, or null for none.
+     */
+    void setToolTipSource (BiFunction<Integer, Integer, String> source){
+        toolTipSource = source;
+        for (TableField[] row : table)
+            for (TableField field : row)
+                ToolTipManager.sharedInstance().registerComponent(field);
+    }
+
+    /**
+     * Adds a new item listener for the coloring check box.
+     * @param colorListener item listener for the check box.
+     */
+    void addColorListener (Controller.ColorListener colorListener){
+        colorBox.addItemListener(colorListener);
+    }
+
+    /**
+     * Adds document listener and focus listener for a textfield from the table.
+     * @param x field x coordinate in the table.
+     * @param y field y coordinate in the table.
+     * @param fieldListener object of a custom class that contains both document and
+     *                      focus listeners.
+     */
+    void addFieldListener (int x, int y, Controller.FieldListener fieldListener){
+        table[x][y].getDocument().addDocumentListener(fieldListener.listener);
+        table[x][y].addFocusListener(fieldListener.focusListener);
+    }
+
+    /**
+     * Returns text contained by a textfield.
+     * @param x field x coordinate in the table.
+     * @param y field y coordinate in the table.
+     * @return text in the field, in String.
+     */
+    String getFieldText (int x, int y){
+        return table[x][y].getText();
+    }
+
+    /**
+     * Returns the digit typed in a textfield, without allocating a String.
+     * @param x field x coordinate in the table.
+     * @param y field y coordinate in the table.
+     * @return 0 for an empty field, the digit for a single digit symbol
+     *         ([1-9] on the classic board, then letters), -1 for anything else.
+     */
+    int getFieldDigit (int x, int y){
+        Document document = table[x][y].getDocument();
+        int length = document.getLength();
+
+        if (length == 0)
+            return 0;
+        if (length > 1)
+            return -1;
+
+        try {
+            document.getText(0, 1, textSegment);
+        } catch (BadLocationException e) {
+            return -1;
+        }
+
+        int digit = geometry.digitOf(textSegment.first());
+        return digit > 0 ? digit : -1;
+    }
+
+    /**
+     * Replaces text of a textfield, notifying its document listeners.
+     * @param x field x coordinate in the table.
+     * @param y field y coordinate in the table.
+     * @param text new text of the field.
+     */
+    void setFieldText (int x, int y, String text){
+        table[x][y].setText(text);
+    }
+
+    /**
+     * Starts a batched update of the fields. Until the matching endUpdate(),
+     * background changes are only recorded and repaints are held back.
+     * Batches may be nested, the outermost one applies the changes.
+     */
+    void beginUpdate (){
+        ++updateDepth;
+    }
+
+    /**
+     * Ends a batched update. At the outermost level, sets every recorded
+     * background that differs from the current one, then repaints the
+     * changed area of the grid at once.
+     */
+    void endUpdate (){
+        if (updateDepth > 1) {
+            --updateDepth;
+            return;
+        }
+
+        int size = geometry.size;
+        for (int k = 0; k < pendingCount; ++k) {
+            int cell = pendingCells[k];
+            TableField field = table[cell / size][cell % size];
+            if (!pendingBackgrounds[cell].equals(field.getBackground()))
+                field.setBackground(pendingBackgrounds[cell]);
+            pendingBackgrounds[cell] = null;
+        }
+        pendingCount = 0;
+        updateDepth = 0;
+
+        if (dirtyArea != null) {
+            wholeGrid.repaint(dirtyArea);
+            dirtyArea = null;
+        }
+    }
+
+    /**
+     * Colors background of a field.
+     * @param x field x coordinate in the table.
+     * @param y field y coordinate in the table.
+     * @param c color to set field background with.
+     */
+    void setFieldBackground (int x, int y, Color c){
+        if (updateDepth == 0) {
+            table[x][y].setBackground(c);
+            return;
+        }
+
+        int cell = x * geometry.size + y;
+        if (pendingBackgrounds[cell] == null)
+            pendingCells[pendingCount++] = cell;
+        pendingBackgrounds[cell] = c;
+    }
+
+
+    /**
+     * Returns field's backgrouond color, including a change pending in
+     * a batched update.
+     * @param x field x coordinate in the table.
+     * @param y field y coordinate in the table.
+     * @return color of the field's background.
+     */
+    Color getFieldBackground (int x, int y){
+        Color pending = pendingBackgrounds[x * geometry.size + y];
+        return pending != null ? pending : table[x][y].getBackground();
+    }
+
+    /**
+     * Sets default background color for a field.
+     * @param x field x coordinate in the table.
+     * @param y field y coordinate in the table.
+     * @param c new field's default color.
+     */
+    void setDefaultFieldBackground (int x, int y, Color c){
+        table[x][y].setDefaultColor(c);
+    }
+
+    /**
+     * Returns default background color of a field.
+     * @param x field x coordinate in the table.
+     * @param y field y coordinate in the table.
+     * @return tablefield's default color.
+     */
+    Color getDefaultFieldBackground (int x, int y){
+        return table[x][y].getDefaultColor();
+    }
+
+    /**
+     * Sets a new sudoku grid.
+     * Fields marked as visible (true in corresponding visibilityArray's position)
+     * display digits, are disabled and are colored gray.
+     * Other fiedls are white, enabled and contain no text, waiting for the player
+     * to fill them.
+     * @param newTable array of digits to fill the fields with.
+     * @param visibilityArray boolean array, indicating which digits are shown.
+     */
+    void newGame (char[][] newTable, boolean[][] visibilityArray) {
+        beginUpdate();
+        try {
+            for (int i = 0; i < geometry.size; ++i)
+                for (int j = 0; j < geometry.size; ++j) {
+                    TableField currentField = table[i][j];
+
+                    if (visibilityArray[i][j]) {
+                        currentField.setText(String.valueOf(newTable[i][j]));
+                        currentField.setDefaultColor(Color.GRAY);
+                        setFieldBackground(i, j, Color.GRAY);
+                        currentField.setEnabled(false);
+                    } else {
+                        currentField.setText("");
+                        currentField.setDefaultColor(Color.WHITE);
+                        setFieldBackground(i, j, Color.WHITE);
+                        currentField.setEnabled(true);
+                    }
+                }
+        } finally {
+            endUpdate();
+        }
+    }
+
+    /**
+     * Informs the player that the table is whole filled correctly.
+     * Disables the table and colors it green, and displays a message.
+     */
+    void filledCorrectly () {
+        beginUpdate();
+        try {
+            for (int i = 0; i < geometry.size; ++i) {
+                for (int j = 0; j < geometry.size; ++j) {
+                    setFieldBackground(i, j, Color.GREEN);
+                    table[i][j].setEnabled(false);
+                }
+            }
+        } finally {
+            endUpdate();
+        }
+
+        displayMessage("Correct!");
+    }
+}
@@ -0,0 +1,103 @@
+package KSudoku;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * LanePropagator on the Vector API: the steps of ScalarPropagator run on
+ * one SIMD register per cell, holding that cell's masks in all lanes, so
+ * as many puzzles are propagated at once as the preferred int species has
+ * lanes (8 with AVX2, 16 with AVX-512).
+ * Needs the jdk.incubator.vector module, both to compile and to run:
+ * javac and java --add-modules jdk.incubator.vector. Without it
+ * LanePropagator.create() falls back to ScalarPropagator.
+ * Not thread safe.
+ */
+public class VectorPropagator implements LanePropagator {
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+    private final Geometry geometry;    /* shape of the puzzles */
+    private final int all;              /* mask with all N digits set */
+    private final IntVector zero;       /* 0 in all lanes */
+    private final int[] fixed;          /* per lane, digits placed in the unit */
+    private final int[] duplicate;      /* per lane, digits placed twice in the unit */
+    private final int[] once;           /* per lane, digits seen in the unit */
+    private final int[] twice;          /* per lane, digits seen at least twice in the unit */
+
+    /**
+     * VectorPropagator class constructor.
+     * @param geometry shape of the puzzles, up to 25x25.
+     */
+    public VectorPropagator(Geometry geometry) {
+        this.geometry = geometry;
+        all = (int) geometry.all;
+        zero = IntVector.zero(SPECIES);
+        fixed = new int[SPECIES.length()];
+        duplicate = new int[SPECIES.length()];
+        once = new int[SPECIES.length()];
+        twice = new int[SPECIES.length()];
+    }
+
+    @Override
+    public int lanes() {
+        return SPECIES.length();
+    }
+
+    @Override
+    public void propagate(int[] candidates) {
+        int size = geometry.size, lanes = SPECIES.length();
+        int[] unitCells = geometry.unitCells;
+
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int first = 0; first < unitCells.length; first += size) {
+                /* The accumulators go through arrays: vectors carried around
+                 * a loop are not kept in registers by every JIT. */
+                zero.intoArray(fixed, 0);
+                zero.intoArray(duplicate, 0);
+                zero.intoArray(once, 0);
+                zero.intoArray(twice, 0);
+                for (int k = first; k < first + size; ++k) {
+                    IntVector mask = IntVector.fromArray(SPECIES, candidates, unitCells[k] * lanes);
+                    IntVector single = zero.blend(mask, isSingle(mask));
+                    IntVector placed = IntVector.fromArray(SPECIES, fixed, 0);
+                    IntVector seen = IntVector.fromArray(SPECIES, once, 0);
+                    IntVector.fromArray(SPECIES, duplicate, 0).or(placed.and(single)).intoArray(duplicate, 0);
+                    placed.or(single).intoArray(fixed, 0);
+                    IntVector.fromArray(SPECIES, twice, 0).or(seen.and(mask)).intoArray(twice, 0);
+                    seen.or(mask).intoArray(once, 0);
+                }
+
+                IntVector placed = IntVector.fromArray(SPECIES, fixed, 0);
+                IntVector seen = IntVector.fromArray(SPECIES, once, 0);
+                VectorMask<Integer> broken = IntVector.fromArray(SPECIES, duplicate, 0).compare(VectorOperators.NE, 0)
+                        .or(seen.compare(VectorOperators.NE, all));
+                IntVector hidden = seen.lanewise(VectorOperators.AND_NOT, IntVector.fromArray(SPECIES, twice, 0))
+                        .lanewise(VectorOperators.AND_NOT, placed);
+                for (int k = first; k < first + size; ++k) {
+                    int offset = unitCells[k] * lanes;
+                    IntVector old = IntVector.fromArray(SPECIES, candidates, offset);
+                    IntVector narrowed = old.lanewise(VectorOperators.AND_NOT, placed);
+                    IntVector hiddenOnly = narrowed.and(hidden);
+                    narrowed = narrowed.blend(hiddenOnly, hiddenOnly.compare(VectorOperators.NE, 0));
+                    IntVector mask = narrowed.blend(old, isSingle(old)).blend(zero, broken);
+
+                    if (mask.compare(VectorOperators.NE, old).anyTrue()) {
+                        mask.intoArray(candidates, offset);
+                        changed = true;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the lanes holding at most one candidate.
+     */
+    private static VectorMask<Integer> isSingle(IntVector mask) {
+        return mask.and(mask.sub(1)).compare(VectorOperators.EQ, 0);
+    }
+}